@@ -0,0 +1,232 @@
+import java.util.Arrays;
+
+/**
+ * Compresses with Huffman codes learned while coding instead of sent in a
+ * header. Encoder and decoder start from the same flat counts, update them
+ * after every byte and rebuild their codes on the same schedule. The codes
+ * are canonical codes computed from the counts alone, so encoder and decoder
+ * always agree on them. Codes are rebuilt after 1, 2, 4, ... bytes and
+ * then every interval bytes, so the codes settle quickly and then follow
+ * changes in the input.
+ *
+ * With order 0 there is one model for the whole input. With order 1 there
+ * is one model per previous byte, which captures the structure of text such
+ * as logs (a digit tends to follow a digit, a space follows a word) at the
+ * cost of learning 256 models instead of one.
+ *
+ * The output is HUFF_ADAPTIVE_NUMBER, the order in BITS_PER_WORD bits, the
+ * interval in BITS_PER_INT bits and the codes of the input followed by
+ * PSEUDO_EOF. Only one pass is made over the input.
+ *
+ */
+public class AdaptiveHuffProcessor implements Processor {
+	public static int DEFAULT_INTERVAL = 16384;
+
+	/**
+	 * Amount a count grows per occurrence. Every symbol starts at 1 so it can
+	 * be coded before it is seen, and a larger increment lets what has been
+	 * seen outweigh that flat start sooner.
+	 */
+	private static final int INCREMENT = 16;
+
+	// halve the counts of a model once they add up to more than this, which
+	// keeps codes well under 64 bits and favors recent input
+	private static final int MAX_TOTAL = 1 << 24;
+
+	private final int myOrder;
+	private final int myInterval;
+
+	public AdaptiveHuffProcessor() {
+		this(0, DEFAULT_INTERVAL);
+	}
+
+	public AdaptiveHuffProcessor(int order) {
+		this(order, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Creates a processor with the given context order, 0 or 1, that rebuilds
+	 * each model's codes at least every interval bytes coded with it.
+	 *
+	 * @throws an IllegalArgumentException if order is not 0 or 1 or interval
+	 *             is not positive
+	 */
+	public AdaptiveHuffProcessor(int order, int interval) {
+		if (order != 0 && order != 1)
+			throw new IllegalArgumentException("Order is not 0 or 1.");
+		if (interval <= 0)
+			throw new IllegalArgumentException("Interval is not positive.");
+		myOrder = order;
+		myInterval = interval;
+	}
+
+	/**
+	 * Counts and current codes of one context.
+	 */
+	private static class Model {
+		private final int[] myCounts = new int[HuffProcessor.ALPH_SIZE + 1];
+		private int myTotal;
+		private long mySeen;
+		private long myNextRebuild = 1;
+		private final int myInterval;
+
+		// codes for encoding, or the decoder for decoding
+		private long[] myCodes;
+		private int[] myLengths;
+		private HuffDecoder myDecoder;
+
+		Model(int interval, boolean decoding) {
+			myInterval = interval;
+			for (int i = 0; i < myCounts.length; i++) {
+				myCounts[i] = 1;
+			}
+			myTotal = myCounts.length;
+			if (!decoding) {
+				myCodes = new long[myCounts.length];
+				myLengths = new int[myCounts.length];
+			}
+			rebuild();
+		}
+
+		/**
+		 * Counts symbol and rebuilds the codes if it is time to.
+		 */
+		void update(int symbol) {
+			myCounts[symbol] += INCREMENT;
+			myTotal += INCREMENT;
+			mySeen++;
+			if (mySeen < myNextRebuild)
+				return;
+			if (myTotal > MAX_TOTAL) {
+				myTotal = 0;
+				for (int i = 0; i < myCounts.length; i++) {
+					myCounts[i] = (myCounts[i] + 1) / 2;
+					myTotal += myCounts[i];
+				}
+			}
+			myNextRebuild = mySeen + Math.min(mySeen, myInterval);
+			rebuild();
+		}
+
+		// the codes are canonical, so they follow from the lengths, and the
+		// lengths follow from the counts alone
+		private void rebuild() {
+			if (myCodes != null) {
+				codeLengths(myCounts, myLengths);
+				HuffProcessor.canonicalCodes(myLengths, myCodes);
+			} else {
+				int[] lengths = new int[myCounts.length];
+				codeLengths(myCounts, lengths);
+				myDecoder = new HuffDecoder(HuffProcessor.canonicalTree(lengths));
+			}
+		}
+
+		/**
+		 * Fills lengths with the Huffman code lengths for counts. Leaves are
+		 * sorted by count, then symbol, and merged with the two queue method,
+		 * taking a leaf before a merged node of the same weight, so every tie
+		 * is broken the same way in encoder and decoder.
+		 */
+		private static void codeLengths(int[] counts, int[] lengths) {
+			int n = counts.length;
+			long[] leaves = new long[n];
+			for (int i = 0; i < n; i++) {
+				leaves[i] = (long) counts[i] << 32 | i;
+			}
+			Arrays.sort(leaves);
+
+			// nodes 0..n-1 are the sorted leaves, the rest are merged in order,
+			// so a parent always comes after its children
+			long[] weights = new long[2 * n - 1];
+			int[] parents = new int[2 * n - 1];
+			for (int i = 0; i < n; i++) {
+				weights[i] = leaves[i] >>> 32;
+			}
+			int leaf = 0;
+			int merged = n;
+			for (int next = n; next < weights.length; next++) {
+				for (int child = 0; child < 2; child++) {
+					int node;
+					if (leaf < n && (merged == next || weights[leaf] <= weights[merged]))
+						node = leaf++;
+					else
+						node = merged++;
+					weights[next] += weights[node];
+					parents[node] = next;
+				}
+			}
+
+			int[] depths = new int[weights.length];
+			for (int i = weights.length - 2; i >= 0; i--) {
+				depths[i] = depths[parents[i]] + 1;
+			}
+			for (int i = 0; i < n; i++) {
+				lengths[(int) leaves[i]] = depths[i];
+			}
+		}
+	}
+
+	@Override
+	public void compress(BitInputStream in, BitOutputStream out) {
+		out.writeBits(HuffProcessor.BITS_PER_INT, HuffProcessor.HUFF_ADAPTIVE_NUMBER);
+		out.writeBits(HuffProcessor.BITS_PER_WORD, myOrder);
+		out.writeBits(HuffProcessor.BITS_PER_INT, myInterval);
+
+		Model[] models = new Model[myOrder == 0 ? 1 : HuffProcessor.ALPH_SIZE];
+		HuffBitWriter body = new HuffBitWriter(out);
+		Model model = model(models, 0, myInterval, false);
+		int current = in.readBits(HuffProcessor.BITS_PER_WORD);
+		while (current != -1) {
+			body.writeBits(model.myLengths[current], model.myCodes[current]);
+			model.update(current);
+			if (myOrder == 1)
+				model = model(models, current, myInterval, false);
+			current = in.readBits(HuffProcessor.BITS_PER_WORD);
+		}
+		body.writeBits(model.myLengths[HuffProcessor.PSEUDO_EOF], model.myCodes[HuffProcessor.PSEUDO_EOF]);
+		body.flush();
+	}
+
+	// the model of context, created when the context is first reached
+	private static Model model(Model[] models, int context, int interval, boolean decoding) {
+		if (models[context] == null)
+			models[context] = new Model(interval, decoding);
+		return models[context];
+	}
+
+	@Override
+	public void decompress(BitInputStream in, BitOutputStream out) {
+		HuffBitReader bits = new HuffBitReader(in);
+		int magic = bits.readBits(HuffProcessor.BITS_PER_INT);
+		if (magic == HuffProcessor.HUFF_ADAPTIVE_NUMBER)
+			decompressAdaptive(bits, out);
+		else
+			new HuffProcessor().decompress(magic, bits, out);
+	}
+
+	/**
+	 * Decompresses the rest of an adaptive stream, whose magic number has
+	 * already been read from in.
+	 */
+	static void decompressAdaptive(HuffBitReader in, BitOutputStream out) {
+		int order = in.readBits(HuffProcessor.BITS_PER_WORD);
+		int interval = in.readBits(HuffProcessor.BITS_PER_INT);
+		if ((order != 0 && order != 1) || interval <= 0)
+			throw new HuffException("Bad header.");
+
+		Model[] models = new Model[order == 0 ? 1 : HuffProcessor.ALPH_SIZE];
+		Model model = model(models, 0, interval, true);
+		int symbol = model.myDecoder.decode(in);
+		while (symbol != -1) {
+			if (symbol == HuffProcessor.PSEUDO_EOF)
+				return;
+			out.writeBits(HuffProcessor.BITS_PER_WORD, symbol);
+			model.update(symbol);
+			if (order == 1)
+				model = model(models, symbol, interval, true);
+			symbol = model.myDecoder.decode(in);
+		}
+
+		throw new HuffException("Problem with Pseudo-EOF.");
+	}
+}
@@ -0,0 +1,73 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes each topKMatches call allocates, using the
+ * per-thread allocation counter of the HotSpot ThreadMXBean. The only
+ * allocation BinarySearchAutocomplete should report is the String[] it
+ * returns (16 bytes of header plus 4 bytes per word, rounded up to 8).
+ *
+ * Usage: java AllocationBenchmark [number of terms] [k]
+ *
+ */
+public class AllocationBenchmark {
+	public static int RANDOM_SEED = 1234;
+	public static int WARMUP = 20000;
+	public static int ITERATIONS = 100000;
+
+	/**
+	 * Returns the number of bytes the current thread has allocated so far.
+	 */
+	public static long allocatedBytes() {
+		com.sun.management.ThreadMXBean bean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the average number of bytes allocated by the current thread per
+	 * topKMatches call, cycling through the given prefixes.
+	 */
+	public static double bytesPerOp(Autocompletor auto, String[] prefixes, int k) {
+		int sink = 0;
+
+		for (int i = 0; i < WARMUP; i++) {
+			sink += auto.topKMatches(prefixes[i % prefixes.length], k).length;
+		}
+
+		long before = allocatedBytes();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += auto.topKMatches(prefixes[i % prefixes.length], k).length;
+		}
+		long after = allocatedBytes();
+
+		if (sink == 42)
+			System.out.println();
+		return (double) (after - before) / ITERATIONS;
+	}
+
+	public static void main(String[] args) {
+		int n = 200000;
+		int k = 10;
+		if (args.length >= 1)
+			n = Integer.parseInt(args[0]);
+		if (args.length >= 2)
+			k = Integer.parseInt(args[1]);
+
+		ZipfDictionary dictionary = new ZipfDictionary(n, RANDOM_SEED);
+		String[] terms = dictionary.words();
+		double[] weights = dictionary.weights();
+
+		Autocompletor[] autos = { new BinarySearchAutocomplete(terms, weights),
+				new TrieAutocomplete(terms, weights) };
+		String[][] prefixes = { { "a", "m", "t" }, { "ab", "mo", "th" },
+				{ "abc", "mon", "the" }, { "zzzz", "qqq" } };
+
+		for (Autocompletor auto : autos) {
+			System.out.println(auto.getClass().getName() + ", k = " + k);
+			for (String[] group : prefixes) {
+				System.out.printf("  prefix length %d: %.1f bytes/op%n",
+						group[0].length(), bytesPerOp(auto, group, k));
+			}
+		}
+	}
+}
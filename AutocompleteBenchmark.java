@@ -0,0 +1,225 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/**
+ * Benchmarks the Autocompletor implementations on a ZipfDictionary:
+ * construction time, then topMatch and topKMatches latency for prefix
+ * lengths 0 to 5 and k in {1, 10, 100}, with the bytes each call allocates.
+ * Every measurement is preceded by a warmup run of the same length so the
+ * JIT has compiled the query path, and query prefixes are drawn from the
+ * dictionary in proportion to word weight, so results are reproducible
+ * offline for a given size and seed. RadixTrieAutocomplete is then compared
+ * with TrieAutocomplete on node count and top-k latency, and fuzzy
+ * TrieAutocomplete queries are measured on prefixes with one random typo,
+ * for 1 and 2 allowed edits. Last, keystroke bursts (the prefixes of lengths
+ * 1 to MAX_PREFIX_LENGTH of one word) are answered with topKMatchesBatch and
+ * compared with one topKMatches call per prefix.
+ *
+ * Usage: java AutocompleteBenchmark [number of terms] [milliseconds per measurement]
+ *
+ */
+public class AutocompleteBenchmark {
+	public static int RANDOM_SEED = 1234;
+	public static int BUILD_RUNS = 3;
+	public static int PREFIXES = 4096;
+	public static int MAX_PREFIX_LENGTH = 5;
+	public static int[] KS = { 1, 10, 100 };
+	public static int[] EDITS = { 1, 2 };
+	public static int FUZZY_K = 10;
+	public static int BATCH_K = 10;
+
+	/**
+	 * A single benchmarked call; the returned value is accumulated so the JIT
+	 * cannot drop the call. i is the number of calls so far modulo PREFIXES,
+	 * to index the prefixes with.
+	 */
+	public interface Operation {
+		int run(int i);
+	}
+
+	private static int ourSink;
+
+	/**
+	 * Runs op repeatedly for about millis milliseconds after an equally long
+	 * warmup, and returns {nanoseconds per op, bytes allocated per op}.
+	 */
+	public static double[] measure(Operation op, long millis) {
+		run(op, millis);
+		long start = System.nanoTime();
+		long before = AllocationBenchmark.allocatedBytes();
+		long ops = run(op, millis);
+		long after = AllocationBenchmark.allocatedBytes();
+		long elapsed = System.nanoTime() - start;
+		return new double[] { (double) elapsed / ops, (double) (after - before) / ops };
+	}
+
+	/**
+	 * Calls op in batches until millis milliseconds have passed and returns
+	 * the number of calls.
+	 */
+	private static long run(Operation op, long millis) {
+		long end = System.nanoTime() + millis * 1000000;
+		long ops = 0;
+		int batch = 64;
+		do {
+			for (int i = 0; i < batch; i++) {
+				ourSink += op.run((int) ((ops + i) % PREFIXES));
+			}
+			ops += batch;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	/**
+	 * The implementations benchmarked, by name.
+	 */
+	public static Map<String, BiFunction<String[], double[], Autocompletor>> implementations() {
+		Map<String, BiFunction<String[], double[], Autocompletor>> map =
+				new LinkedHashMap<String, BiFunction<String[], double[], Autocompletor>>();
+		map.put("BinarySearchAutocomplete", BinarySearchAutocomplete::new);
+		map.put("BinarySearchAutocomplete, range max", (t, w) -> new BinarySearchAutocomplete(t, w, true));
+		map.put("TrieAutocomplete", TrieAutocomplete::new);
+		map.put("RadixTrieAutocomplete", RadixTrieAutocomplete::new);
+		map.put("CompactTrieAutocomplete", CompactTrieAutocomplete::new);
+		map.put("CompactTrieAutocomplete, top-10 cache", (t, w) -> new CompactTrieAutocomplete(t, w, 10));
+		return map;
+	}
+
+	/**
+	 * Returns the fastest of BUILD_RUNS constructions, in milliseconds.
+	 */
+	public static double buildMillis(BiFunction<String[], double[], Autocompletor> factory,
+			String[] terms, double[] weights) {
+		double best = Double.MAX_VALUE;
+		for (int run = 0; run < BUILD_RUNS; run++) {
+			long start = System.nanoTime();
+			ourSink += factory.apply(terms, weights).hashCode();
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	/**
+	 * Returns word with one character replaced, inserted or deleted at random.
+	 */
+	public static String typo(String word, Random random) {
+		char c = (char) ('a' + random.nextInt(26));
+		int i = random.nextInt(word.length() + 1);
+		switch (random.nextInt(3)) {
+		case 0:
+			if (i < word.length())
+				return word.substring(0, i) + c + word.substring(i + 1);
+			// nothing to replace at the end, insert instead
+			return word.substring(0, i) + c + word.substring(i);
+		case 1:
+			return word.substring(0, i) + c + word.substring(i);
+		default:
+			if (i < word.length())
+				return word.substring(0, i) + word.substring(i + 1);
+			return word.substring(0, i) + c;
+		}
+	}
+
+	/**
+	 * Answers the prefixes one topKMatches call at a time.
+	 */
+	private static int singles(Autocompletor auto, String[] prefixes) {
+		int sum = 0;
+		for (String prefix : prefixes) {
+			sum += auto.topKMatches(prefix, BATCH_K).length;
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) {
+		int n = 500000;
+		long millis = 200;
+		if (args.length >= 1)
+			n = Integer.parseInt(args[0]);
+		if (args.length >= 2)
+			millis = Long.parseLong(args[1]);
+
+		ZipfDictionary dictionary = new ZipfDictionary(n, RANDOM_SEED);
+		String[] terms = dictionary.words();
+		double[] weights = dictionary.weights();
+		Random random = new Random(RANDOM_SEED);
+		String[][] prefixes = new String[MAX_PREFIX_LENGTH + 1][];
+		for (int length = 0; length <= MAX_PREFIX_LENGTH; length++) {
+			prefixes[length] = dictionary.prefixes(length, PREFIXES, random);
+		}
+
+		System.out.printf("%d terms, Zipf weights, seed %d%n", n, RANDOM_SEED);
+		for (Map.Entry<String, BiFunction<String[], double[], Autocompletor>> entry : implementations().entrySet()) {
+			System.out.println();
+			System.out.println(entry.getKey());
+			System.out.printf("  construction: %.1f ms%n", buildMillis(entry.getValue(), terms, weights));
+
+			final Autocompletor auto = entry.getValue().apply(terms, weights);
+			System.out.printf("  %-6s %-10s %12s %12s%n", "prefix", "query", "ns/op", "bytes/op");
+			for (int length = 0; length <= MAX_PREFIX_LENGTH; length++) {
+				final String[] group = prefixes[length];
+				double[] result = measure(i -> auto.topMatch(group[i]).length(), millis);
+				System.out.printf("  %-6d %-10s %12.0f %12.1f%n", length, "topMatch", result[0], result[1]);
+				for (final int k : KS) {
+					result = measure(i -> auto.topKMatches(group[i], k).length, millis);
+					System.out.printf("  %-6d %-10s %12.0f %12.1f%n", length, "top" + k, result[0], result[1]);
+				}
+			}
+		}
+
+		System.out.println();
+		System.out.println("RadixTrieAutocomplete vs TrieAutocomplete");
+		final TrieAutocomplete trie = new TrieAutocomplete(terms, weights);
+		final RadixTrieAutocomplete radix = new RadixTrieAutocomplete(terms, weights);
+		int trieNodes = RadixTrieAutocomplete.nodeCount(trie);
+		System.out.printf("  nodes: %d vs %d (%.1f%% fewer)%n", radix.nodeCount(), trieNodes,
+				100.0 * (trieNodes - radix.nodeCount()) / trieNodes);
+		System.out.printf("  %-6s %-10s %12s %12s %8s%n", "prefix", "query", "radix ns", "trie ns", "speedup");
+		for (int length = 0; length <= MAX_PREFIX_LENGTH; length++) {
+			final String[] group = prefixes[length];
+			for (final int k : KS) {
+				double radixNanos = measure(i -> radix.topKMatches(group[i], k).length, millis)[0];
+				double trieNanos = measure(i -> trie.topKMatches(group[i], k).length, millis)[0];
+				System.out.printf("  %-6d %-10s %12.0f %12.0f %7.2fx%n", length, "top" + k, radixNanos, trieNanos,
+						trieNanos / radixNanos);
+			}
+		}
+
+		System.out.println();
+		System.out.println("TrieAutocomplete, fuzzy top" + FUZZY_K + " with one typo");
+		System.out.printf("  %-6s %-10s %12s %12s%n", "prefix", "edits", "ns/op", "bytes/op");
+		for (int length = 3; length <= MAX_PREFIX_LENGTH; length++) {
+			final String[] group = new String[PREFIXES];
+			for (int i = 0; i < PREFIXES; i++) {
+				group[i] = typo(prefixes[length][i], random);
+			}
+			for (final int edits : EDITS) {
+				double[] result = measure(i -> trie.topKMatches(group[i], FUZZY_K, edits).length, millis);
+				System.out.printf("  %-6d %-10d %12.0f %12.1f%n", length, edits, result[0], result[1]);
+			}
+		}
+
+		System.out.println();
+		System.out.println("Keystroke bursts of " + MAX_PREFIX_LENGTH + " prefixes, top" + BATCH_K);
+		System.out.printf("  %-36s %12s %12s%n", "", "batch ns", "single ns");
+		final String[][] bursts = new String[PREFIXES][MAX_PREFIX_LENGTH];
+		for (int i = 0; i < PREFIXES; i++) {
+			for (int length = 1; length <= MAX_PREFIX_LENGTH; length++) {
+				bursts[i][length - 1] = prefixes[MAX_PREFIX_LENGTH][i].substring(0,
+						Math.min(length, prefixes[MAX_PREFIX_LENGTH][i].length()));
+			}
+		}
+		final BinarySearchAutocomplete binary = new BinarySearchAutocomplete(terms, weights, true);
+		double batch = measure(i -> binary.topKMatchesBatch(bursts[i], BATCH_K).length, millis)[0];
+		double single = measure(i -> singles(binary, bursts[i]), millis)[0];
+		System.out.printf("  %-36s %12.0f %12.0f%n", "BinarySearchAutocomplete, range max", batch, single);
+		batch = measure(i -> trie.topKMatchesBatch(bursts[i], BATCH_K).length, millis)[0];
+		single = measure(i -> singles(trie, bursts[i]), millis)[0];
+		System.out.printf("  %-36s %12.0f %12.0f%n", "TrieAutocomplete", batch, single);
+
+		if (ourSink == 42)
+			System.out.println();
+	}
+}
@@ -2,11 +2,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 
- * Using a sorted array of Term objects, this implementation uses binary search to find the
+ * Using a sorted array of terms, this implementation uses binary search to find the
  * top term(s).
  * 
  * @author Austin Lu, adapted from Kevin Wayne
@@ -14,7 +17,43 @@ import java.util.PriorityQueue;
  */
 public class BinarySearchAutocomplete implements Autocompletor {
 
-	Term[] myTerms;
+	/**
+	 * Number of pending updates that starts a background merge into the
+	 * sorted terms.
+	 */
+	public static int MERGE_THRESHOLD = 1024;
+
+	/**
+	 * Milliseconds that fewer than MERGE_THRESHOLD pending updates wait for
+	 * more before they are merged anyway. Queries take a slower, allocating
+	 * path while updates are pending, so they should not stay pending long.
+	 */
+	public static long MERGE_DELAY_MILLIS = 10;
+
+	/**
+	 * Weight recorded in an Updates buffer for a removed word.
+	 */
+	static final double REMOVED = -1;
+
+	/**
+	 * Everything a query reads. Updates and merges never modify a Snapshot,
+	 * they publish a new one, so a query sees the sorted terms, their index
+	 * and the pending updates from one consistent point in time.
+	 */
+	private volatile Snapshot mySnapshot;
+
+	/**
+	 * Whether a background merge is running, and whether a delayed merge is
+	 * waiting to start. Guarded by this.
+	 */
+	private boolean myMerging;
+	private boolean myMergeScheduled;
+
+	private static final ScheduledExecutorService ourMerger = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "autocomplete-merge");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
 	 * Given arrays of words and weights, initialize myTerms to a corresponding
@@ -32,13 +71,367 @@ public class BinarySearchAutocomplete implements Autocompletor {
 	 * null
 	 */
 	public BinarySearchAutocomplete(String[] terms, double[] weights) {
+		this(terms, weights, false);
+	}
+
+	/**
+	 * Same as BinarySearchAutocomplete(terms, weights), but optionally also
+	 * builds a range-maximum index over the sorted terms. With the index,
+	 * topMatch takes O(log n) instead of scanning the matching range, and
+	 * topKMatches takes O(k (log k + log n)).
+	 * 
+	 * @param terms - A list of words to form terms from
+	 * @param weights - A corresponding list of weights, such that
+	 * terms[i] has weight[i].
+	 * @param rangeMaxIndex - Whether to build the range-maximum index
+	 * @throws a NullPointerException if either argument passed in is
+	 * null
+	 */
+	public BinarySearchAutocomplete(String[] terms, double[] weights, boolean rangeMaxIndex) {
 		if (terms == null || weights == null)
 			throw new NullPointerException("One or more arguments null");
-		myTerms = new Term[terms.length];
+		Term[] sorted = new Term[terms.length];
 		for (int i = 0; i < terms.length; i++) {
-			myTerms[i] = new Term(terms[i], weights[i]);
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		Arrays.sort(sorted);
+		TermStore store = new TermStore(sorted);
+		mySnapshot = new Snapshot(store, rangeMaxIndex ? buildMaxTree(store) : null,
+				Updates.NONE, Updates.NONE);
+	}
+
+	/**
+	 * Wraps terms that are already sorted lexicographically, as produced by
+	 * ParallelAutocompleteBuilder.
+	 */
+	BinarySearchAutocomplete(Term[] sortedTerms, boolean rangeMaxIndex) {
+		TermStore store = new TermStore(sortedTerms);
+		mySnapshot = new Snapshot(store, rangeMaxIndex ? buildMaxTree(store) : null,
+				Updates.NONE, Updates.NONE);
+	}
+
+	/**
+	 * The sorted terms, held column-wise in a TermStore so that a dictionary
+	 * of millions of terms is a handful of arrays rather than millions of
+	 * objects, their optional range-maximum index and two buffers of
+	 * updates not yet merged into the terms. myPending holds the newest
+	 * updates; myMerging holds older ones that a background merge is folding
+	 * into a new array of terms.
+	 */
+	static class Snapshot {
+		final TermStore myTerms;
+
+		/**
+		 * Optional range-maximum index over the weights of myTerms: a segment
+		 * tree whose leaf n+i holds i and whose internal node j holds
+		 * whichever of the indices at 2j and 2j+1 has the larger weight. Null
+		 * if not built.
+		 */
+		final int[] myMaxTree;
+
+		final Updates myMerging;
+		final Updates myPending;
+
+		Snapshot(TermStore terms, int[] maxTree, Updates merging, Updates pending) {
+			myTerms = terms;
+			myMaxTree = maxTree;
+			myMerging = merging;
+			myPending = pending;
+		}
+
+		boolean hasUpdates() {
+			return myMerging.size() > 0 || myPending.size() > 0;
 		}
-		Arrays.sort(myTerms);
+	}
+
+	/**
+	 * An immutable, sorted buffer of updated words and their new weights,
+	 * with REMOVED marking removed words. Small enough to copy on every
+	 * update.
+	 */
+	static class Updates {
+		static final Updates NONE = new Updates(new String[0], new double[0]);
+
+		final String[] myWords;
+		final double[] myWeights;
+
+		Updates(String[] words, double[] weights) {
+			myWords = words;
+			myWeights = weights;
+		}
+
+		int size() {
+			return myWords.length;
+		}
+
+		/**
+		 * Returns the index of word, or a negative number if it is absent.
+		 */
+		int indexOf(String word) {
+			return Arrays.binarySearch(myWords, word);
+		}
+
+		/**
+		 * Returns a copy of this buffer with word set to weight.
+		 */
+		Updates with(String word, double weight) {
+			int i = indexOf(word);
+			if (i >= 0) {
+				double[] weights = myWeights.clone();
+				weights[i] = weight;
+				return new Updates(myWords, weights);
+			}
+			i = -i - 1;
+			String[] words = new String[myWords.length + 1];
+			double[] weights = new double[myWords.length + 1];
+			System.arraycopy(myWords, 0, words, 0, i);
+			System.arraycopy(myWeights, 0, weights, 0, i);
+			words[i] = word;
+			weights[i] = weight;
+			System.arraycopy(myWords, i, words, i + 1, myWords.length - i);
+			System.arraycopy(myWeights, i, weights, i + 1, myWords.length - i);
+			return new Updates(words, weights);
+		}
+
+		/**
+		 * Returns this buffer with the updates of newer applied on top.
+		 */
+		Updates then(Updates newer) {
+			String[] words = new String[size() + newer.size()];
+			double[] weights = new double[words.length];
+			int i = 0;
+			int j = 0;
+			int n = 0;
+			while (i < size() || j < newer.size()) {
+				int cmp;
+				if (i == size())
+					cmp = 1;
+				else if (j == newer.size())
+					cmp = -1;
+				else
+					cmp = myWords[i].compareTo(newer.myWords[j]);
+
+				if (cmp < 0) {
+					words[n] = myWords[i];
+					weights[n++] = myWeights[i++];
+					continue;
+				}
+				words[n] = newer.myWords[j];
+				weights[n++] = newer.myWeights[j++];
+				if (cmp == 0)
+					i++;
+			}
+			return new Updates(Arrays.copyOf(words, n), Arrays.copyOf(weights, n));
+		}
+	}
+
+	/**
+	 * Sets the weight of word, adding it if it is not already present. The
+	 * change is visible to queries immediately; it is merged into the sorted
+	 * terms in the background once MERGE_THRESHOLD updates are pending or
+	 * MERGE_DELAY_MILLIS have passed, and queries keep running against the
+	 * old terms until the merge is done.
+	 * 
+	 * @param word - The word to add or update
+	 * @param weight - Its new weight
+	 * @throws a NullPointerException if word is null
+	 * @throws an IllegalArgumentException if weight is negative
+	 */
+	public void update(String word, double weight) {
+		if (word == null)
+			throw new NullPointerException("Word is null.");
+		if (weight < 0)
+			throw new IllegalArgumentException("Weight is invalid.");
+		record(word, weight);
+	}
+
+	/**
+	 * Removes word, in the same way update changes it.
+	 * 
+	 * @param word - The word to remove
+	 * @return true if word was present
+	 * @throws a NullPointerException if word is null
+	 */
+	public boolean remove(String word) {
+		if (word == null)
+			throw new NullPointerException("Word is null.");
+		synchronized (this) {
+			boolean present = weightOf(mySnapshot, word) != REMOVED;
+			if (present)
+				record(word, REMOVED);
+			return present;
+		}
+	}
+
+	private synchronized void record(String word, double weight) {
+		Snapshot s = mySnapshot;
+		mySnapshot = new Snapshot(s.myTerms, s.myMaxTree, s.myMerging, s.myPending.with(word, weight));
+		startMerge();
+	}
+
+	/**
+	 * Hands the pending updates to the background merger if there are enough
+	 * of them and no merge is running, and otherwise schedules a merge for
+	 * MERGE_DELAY_MILLIS from now.
+	 */
+	private synchronized void startMerge() {
+		Snapshot s = mySnapshot;
+		if (myMerging || s.myPending.size() == 0)
+			return;
+		if (s.myPending.size() >= MERGE_THRESHOLD) {
+			merge();
+			return;
+		}
+		if (myMergeScheduled)
+			return;
+		myMergeScheduled = true;
+		ourMerger.schedule(new Runnable() {
+			public void run() {
+				synchronized (BinarySearchAutocomplete.this) {
+					myMergeScheduled = false;
+					if (!myMerging && mySnapshot.myPending.size() > 0)
+						merge();
+				}
+			}
+		}, MERGE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Merges the pending updates into the sorted terms in the background. If
+	 * the merge fails, the updates stay pending and no further merge is
+	 * started until the next update.
+	 */
+	private synchronized void merge() {
+		final Snapshot s = mySnapshot;
+		myMerging = true;
+		mySnapshot = new Snapshot(s.myTerms, s.myMaxTree, s.myPending, Updates.NONE);
+
+		ourMerger.execute(new Runnable() {
+			public void run() {
+				TermStore terms = null;
+				int[] maxTree = null;
+				boolean merged = false;
+				try {
+					terms = apply(s.myTerms, s.myPending);
+					maxTree = s.myMaxTree == null ? null : buildMaxTree(terms);
+					merged = true;
+				}
+				finally {
+					synchronized (BinarySearchAutocomplete.this) {
+						Snapshot current = mySnapshot;
+						myMerging = false;
+						if (merged) {
+							mySnapshot = new Snapshot(terms, maxTree, Updates.NONE, current.myPending);
+							startMerge();
+						}
+						else
+							mySnapshot = new Snapshot(s.myTerms, s.myMaxTree, Updates.NONE,
+									current.myMerging.then(current.myPending));
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the sorted result of applying updates to the sorted terms.
+	 */
+	static TermStore apply(TermStore terms, Updates updates) {
+		if (updates.size() == 0)
+			return terms;
+		long chars = terms.chars();
+		for (String word : updates.myWords) {
+			chars += word.length();
+		}
+		if (chars > Integer.MAX_VALUE)
+			throw new IllegalStateException("Too many characters for one store.");
+		
+		TermStore merged = new TermStore(terms.size() + updates.size(), (int) chars);
+		int i = 0;
+		int j = 0;
+		while (i < terms.size() || j < updates.size()) {
+			int cmp;
+			if (i == terms.size())
+				cmp = 1;
+			else if (j == updates.size())
+				cmp = -1;
+			else
+				cmp = terms.compare(i, updates.myWords[j]);
+			
+			if (cmp < 0) {
+				merged.add(terms, i++);
+				continue;
+			}
+			if (updates.myWeights[j] != REMOVED)
+				merged.add(updates.myWords[j], updates.myWeights[j]);
+			if (cmp == 0)
+				i++;
+			j++;
+		}
+		return merged;
+	}
+
+	/**
+	 * Returns the current terms, pending updates included, in sorted order.
+	 */
+	Term[] terms() {
+		Snapshot s = mySnapshot;
+		return apply(apply(s.myTerms, s.myMerging), s.myPending).toTerms();
+	}
+
+	/**
+	 * Returns the current weight of word in s, or REMOVED if it is absent.
+	 */
+	private static double weightOf(Snapshot s, String word) {
+		int i = s.myPending.indexOf(word);
+		if (i >= 0)
+			return s.myPending.myWeights[i];
+		i = s.myMerging.indexOf(word);
+		if (i >= 0)
+			return s.myMerging.myWeights[i];
+		i = s.myTerms.indexOf(word);
+		if (i >= 0)
+			return s.myTerms.weight(i);
+		return REMOVED;
+	}
+
+	/**
+	 * Builds a range-maximum index over terms bottom-up in O(n).
+	 */
+	static int[] buildMaxTree(TermStore terms) {
+		int n = terms.size();
+		int[] maxTree = new int[2 * n];
+		for (int i = 0; i < n; i++) {
+			maxTree[n + i] = i;
+		}
+		for (int j = n - 1; j > 0; j--) {
+			maxTree[j] = heavier(terms, maxTree[2 * j], maxTree[2 * j + 1]);
+		}
+		return maxTree;
+	}
+
+	private static int heavier(TermStore terms, int i, int j) {
+		return terms.weight(j) > terms.weight(i) ? j : i;
+	}
+
+	/**
+	 * Returns the index of a largest-weight term in terms[lo..hi], both
+	 * inclusive, in O(log n) using maxTree.
+	 */
+	static int maxIndex(TermStore terms, int[] maxTree, int lo, int hi) {
+		int n = terms.size();
+		int best = lo;
+		int l = lo + n;
+		int r = hi + n + 1;
+		while (l < r) {
+			if ((l & 1) == 1)
+				best = heavier(terms, best, maxTree[l++]);
+			if ((r & 1) == 1)
+				best = heavier(terms, best, maxTree[--r]);
+			l >>>= 1;
+			r >>>= 1;
+		}
+		return best;
 	}
 
 	/**Uses binary search to find the index of the first Term in the passed in 
@@ -117,7 +510,6 @@ public class BinarySearchAutocomplete implements Autocompletor {
 			return low;
 		return -1;
 	}
-
 	/**
 	 * Required by the Autocompletor interface.
 	 * Returns an array containing the k words in myTerms with the largest weight
@@ -138,72 +530,346 @@ public class BinarySearchAutocomplete implements Autocompletor {
 	 * @throws a NullPointerException if prefix is null
 	 */
 	public String[] topKMatches(String prefix, int k) {
-		//TODO: Implement topKMatches
 		if (prefix == null)
 			throw new NullPointerException("Prefix is null.");
 		
 		// return empty array if k = 0;
-		String[] empty = new String[0];
-		if (k == 0) {
-			return empty;
+		if (k <= 0) {
+			return EMPTY;
 		}
 		
-		Term pre = new Term(prefix, 0);
+		Snapshot s = mySnapshot;
+		if (s.hasUpdates())
+			return topKWithUpdates(s, prefix, k);
+		TermStore terms = s.myTerms;
 		
 		// find first and last indices
-		int first = firstIndexOf(myTerms, pre, new Term.PrefixOrder(prefix.length()));		
-		int last = lastIndexOf(myTerms, pre, new Term.PrefixOrder(prefix.length()));
+		int first = terms.firstIndexOf(prefix);
+		if (first == -1) 
+			return EMPTY;
+		int last = terms.lastIndexOf(prefix);
 		
-		// if indices are negative
-		if (first == -1 || last == -1) 
-			return empty;
+		return topKInRange(s, first, last, k);
+	}
+
+	/**
+	 * Returns the words of the k heaviest terms in terms[first..last] of s,
+	 * heaviest first.
+	 */
+	private static String[] topKInRange(Snapshot s, int first, int last, int k) {
+		TermStore terms = s.myTerms;
+		int c = Math.min(k, last - first + 1);
+		int[] heap = scratch(4 * c + 3);
+		int start = topIndices(terms, s.myMaxTree, first, last, c, heap);
 		
-		// add terms to pq
-		PriorityQueue<Term> pq = new PriorityQueue<Term>(new Term.ReverseWeightOrder());
-		for (int i = first; i <= last; i++) {
-			pq.add(myTerms[i]);
-		}
-		  
-		// create array
-		int c = Math.min(k, pq.size());
 		String[] ret = new String[c];
 		for (int i = 0; i < c; i++) {
-			ret[i] = pq.poll().getWord();
+			ret[i] = terms.word(heap[start + i]);
 		}
 		
 		return ret;
+	}
+
+	/**
+	 * Answers topKMatches(prefixes[i], k) for every i at once, returning the
+	 * answers in the same order as prefixes. The prefixes are answered in
+	 * sorted order, and a prefix extending an earlier one ("app" after "ap")
+	 * is searched for only within the earlier one's matching range. All
+	 * answers come from the same point in time, even if updates arrive while
+	 * the batch runs.
+	 * 
+	 * @param prefixes - The prefixes to complete
+	 * @param k - The (maximum) number of words returned per prefix
+	 * @return An array whose element i is topKMatches(prefixes[i], k)
+	 * @throws a NullPointerException if prefixes or any prefix is null
+	 */
+	public String[][] topKMatchesBatch(String[] prefixes, int k) {
+		return topKMatchesBatch(prefixes, k, null);
+	}
+
+	/**
+	 * Same as topKMatchesBatch(prefixes, k), but splits large batches into
+	 * runs of sorted prefixes answered in parallel on pool. A null pool
+	 * answers the whole batch in the calling thread.
+	 */
+	public String[][] topKMatchesBatch(final String[] prefixes, final int k, ForkJoinPool pool) {
+		int[] order = PrefixBatch.sortedOrder(prefixes);
+		final String[][] results = new String[prefixes.length][];
+		final Snapshot s = mySnapshot;
+		PrefixBatch.answer(order, pool, (o, from, to) -> answerRun(s, prefixes, k, o, from, to, results));
+		return results;
+	}
+
+	/**
+	 * Answers the prefixes at order[from..to), which are sorted. stack holds
+	 * the chain of earlier prefixes that the current one extends, each with
+	 * its matching range.
+	 */
+	private static void answerRun(Snapshot s, String[] prefixes, int k, int[] order, int from, int to,
+			String[][] results) {
+		if (k <= 0 || s.hasUpdates()) {
+			for (int i = from; i < to; i++) {
+				results[order[i]] = k <= 0 ? EMPTY : topKWithUpdates(s, prefixes[order[i]], k);
+			}
+			return;
+		}
 		
-		/*ArrayList<Term> temp = new ArrayList<Term>();
-		for (int i = first; i < last + 1; i++) {
-			temp.add(myTerms[i]);
+		TermStore terms = s.myTerms;
+		String[] stack = new String[to - from];
+		int[] firsts = new int[to - from];
+		int[] lasts = new int[to - from];
+		int depth = 0;
+		
+		for (int i = from; i < to; i++) {
+			String prefix = prefixes[order[i]];
+			while (depth > 0 && !prefix.startsWith(stack[depth - 1]))
+				depth--;
+			int lo = depth > 0 ? firsts[depth - 1] : 0;
+			int hi = depth > 0 ? lasts[depth - 1] : terms.size() - 1;
+			
+			int first = terms.firstIndexOf(prefix, lo, hi);
+			if (first == -1) {
+				results[order[i]] = EMPTY;
+				continue;
+			}
+			int last = terms.lastIndexOf(prefix, first, hi);
+			stack[depth] = prefix;
+			firsts[depth] = first;
+			lasts[depth] = last;
+			depth++;
+			
+			results[order[i]] = topKInRange(s, first, last, k);
 		}
+	}
+
+	/**
+	 * topKMatches when updates are pending. Every updated word matching the
+	 * prefix is a candidate, along with enough of the heaviest matching terms
+	 * that k remain after dropping the ones the updates override.
+	 */
+	private static String[] topKWithUpdates(Snapshot s, String prefix, int k) {
+		ArrayList<Term> candidates = new ArrayList<Term>();
+		int updated = addUpdates(candidates, s.myPending, null, prefix)
+				+ addUpdates(candidates, s.myMerging, s.myPending, prefix);
 		
-		Collections.sort(temp, new Term.ReverseWeightOrder());
+		TermStore terms = s.myTerms;
+		int first = terms.firstIndexOf(prefix);
+		if (first != -1) {
+			int last = terms.lastIndexOf(prefix);
+			int c = (int) Math.min((long) k + updated, last - first + 1);
+			int[] heap = scratch(4 * c + 3);
+			int start = topIndices(terms, s.myMaxTree, first, last, c, heap);
+			for (int i = start; i < start + c; i++) {
+				String word = terms.word(heap[i]);
+				if (s.myPending.indexOf(word) < 0 && s.myMerging.indexOf(word) < 0)
+					candidates.add(new Term(word, terms.weight(heap[i])));
+			}
+		}
 		
-		int c = Math.min(last-first+1, k);
+		Collections.sort(candidates, new Comparator<Term>() {
+			public int compare(Term v, Term w) {
+				return Double.compare(w.getWeight(), v.getWeight());
+			}
+		});
 		
-		String[] results = new String[c];
+		int c = Math.min(k, candidates.size());
+		String[] ret = new String[c];
 		for (int i = 0; i < c; i++) {
-			results[i] = temp.get(i).getWord();
+			ret[i] = candidates.get(i).getWord();
 		}
+		return ret;
+	}
+
+	/**
+	 * Adds the words in updates that start with prefix and are neither
+	 * removed nor overridden by newer, then returns how many words in updates
+	 * start with prefix.
+	 */
+	private static int addUpdates(ArrayList<Term> candidates, Updates updates, Updates newer, String prefix) {
+		int count = 0;
+		for (int i = firstIndexOf(updates.myWords, prefix); i >= 0 && i < updates.size()
+				&& Term.comparePrefix(updates.myWords[i], prefix, prefix.length()) == 0; i++) {
+			count++;
+			if (updates.myWeights[i] != REMOVED && (newer == null || newer.indexOf(updates.myWords[i]) < 0))
+				candidates.add(new Term(updates.myWords[i], updates.myWeights[i]));
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the c heaviest terms in terms[first..last] and stores their
+	 * indices, heaviest first, in heap, which must hold at least 4c+3 ints.
+	 * Returns the position of the first index in heap.
+	 */
+	private static int topIndices(TermStore terms, int[] maxTree, int first, int last, int c, int[] heap) {
+		if (maxTree != null)
+			return topIndexed(terms, maxTree, first, last, c, heap);
 		
-		return results;
-		
-		if (last-first+1 < k) {
-			String[] results = new String[last-first+1];
-			for (int i = 0; i < (last-first + 1); i++) {
-				results[i] = pq.poll().getWord();
+		// keep the c heaviest terms of the range in a min-heap of indices
+		int size = 0;
+		for (int i = first; i <= last; i++) {
+			double weight = terms.weight(i);
+			if (size < c) {
+				heap[size] = i;
+				siftUp(terms, heap, size++);
 			}
-			return results;
-		}
-		else {
-			String[] results = new String[k];
-			for (int i = 0; i < k; i++) {
-				results[i] = pq.poll().getWord();
+			else if (weight > terms.weight(heap[0])) {
+				heap[0] = i;
+				siftDown(terms, heap, size, 0);
 			}
-			return results;
-		}*/
+		}
+		
+		// moving each min behind the shrinking heap leaves it sorted heaviest
+		// first
+		for (int i = size - 1; i > 0; i--) {
+			int min = heap[0];
+			heap[0] = heap[i];
+			heap[i] = min;
+			siftDown(terms, heap, i, 0);
+		}
+		
+		return 0;
+	}
+
+	/**
+	 * topIndices using the range-maximum index. A max-heap holds intervals
+	 * of the matching range keyed by the weight of their heaviest term; each
+	 * pop yields the next index and splits its interval around that term, so
+	 * the heap never holds more than k+1 intervals. Entries are stored as
+	 * (max index, lo, hi) triples at the front of heap, and the indices found
+	 * after them.
+	 */
+	private static int topIndexed(TermStore terms, int[] maxTree, int first, int last, int k, int[] heap) {
+		int start = 3 * (k + 1);
+		int size = 0;
+		size = pushInterval(terms, maxTree, heap, size, first, last);
+		
+		for (int i = 0; i < k; i++) {
+			int max = heap[0];
+			int lo = heap[1];
+			int hi = heap[2];
+			heap[start + i] = max;
+			
+			// remove the top
+			size--;
+			heap[0] = heap[3 * size];
+			heap[1] = heap[3 * size + 1];
+			heap[2] = heap[3 * size + 2];
+			intervalSiftDown(terms, heap, size, 0);
+			
+			size = pushInterval(terms, maxTree, heap, size, lo, max - 1);
+			size = pushInterval(terms, maxTree, heap, size, max + 1, hi);
+		}
+		
+		return start;
+	}
 
+	private static int pushInterval(TermStore terms, int[] maxTree, int[] heap, int size, int lo, int hi) {
+		if (lo > hi)
+			return size;
+		heap[3 * size] = maxIndex(terms, maxTree, lo, hi);
+		heap[3 * size + 1] = lo;
+		heap[3 * size + 2] = hi;
+		intervalSiftUp(terms, heap, size);
+		return size + 1;
+	}
+
+	private static void intervalSiftUp(TermStore terms, int[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (terms.weight(heap[3 * parent]) >= terms.weight(heap[3 * i]))
+				break;
+			swapIntervals(heap, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void intervalSiftDown(TermStore terms, int[] heap, int size, int i) {
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && terms.weight(heap[3 * child + 3]) > terms.weight(heap[3 * child]))
+				child++;
+			if (terms.weight(heap[3 * child]) <= terms.weight(heap[3 * i]))
+				break;
+			swapIntervals(heap, i, child);
+			i = child;
+		}
+	}
+
+	private static void swapIntervals(int[] heap, int i, int j) {
+		for (int x = 0; x < 3; x++) {
+			int temp = heap[3 * i + x];
+			heap[3 * i + x] = heap[3 * j + x];
+			heap[3 * j + x] = temp;
+		}
+	}
+
+	private static final String[] EMPTY = new String[0];
+
+	/**
+	 * Per-thread heap storage reused across topKMatches calls, so a query
+	 * allocates nothing besides the array it returns.
+	 */
+	private static final ThreadLocal<int[]> ourScratch = new ThreadLocal<int[]>();
+
+	private static int[] scratch(int size) {
+		int[] heap = ourScratch.get();
+		if (heap == null || heap.length < size) {
+			heap = new int[Math.max(size, 16)];
+			ourScratch.set(heap);
+		}
+		return heap;
+	}
+
+	private static void siftUp(TermStore terms, int[] heap, int i) {
+		int item = heap[i];
+		double weight = terms.weight(item);
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (terms.weight(heap[parent]) <= weight)
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = item;
+	}
+
+	private static void siftDown(TermStore terms, int[] heap, int size, int i) {
+		int item = heap[i];
+		double weight = terms.weight(item);
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && terms.weight(heap[child + 1]) < terms.weight(heap[child]))
+				child++;
+			if (terms.weight(heap[child]) >= weight)
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = item;
+	}
+
+	/**
+	 * Same as firstIndexOf(a, new Term(prefix, 0), new
+	 * Term.PrefixOrder(prefix.length())) over sorted words, comparing
+	 * characters in place instead of allocating a key Term, a comparator and
+	 * substrings.
+	 */
+	static int firstIndexOf(String[] a, String prefix) {
+		int r = prefix.length();
+		int low = -1;
+		int high = a.length;
+		while (high-low > 1) {
+			int mid = (low + high) >>> 1;
+			if (Term.comparePrefix(a[mid], prefix, r) < 0)
+				low = mid;
+			else
+				high = mid;
+		}
+		
+		if (high < a.length && Term.comparePrefix(a[high], prefix, r) == 0)
+			return high;
+		return -1;
 	}
 
 	@Override
@@ -220,40 +886,36 @@ public class BinarySearchAutocomplete implements Autocompletor {
 	 * 
 	 */
 	public String topMatch(String prefix) {
-		//TODO: Implement topMatch
 		if (prefix == null)
 			throw new NullPointerException("Prefix is null");
 		
-		Term pre = new Term(prefix, 0);
+		Snapshot s = mySnapshot;
+		if (s.hasUpdates()) {
+			String[] top = topKWithUpdates(s, prefix, 1);
+			return top.length == 0 ? "" : top[0];
+		}
+		TermStore terms = s.myTerms;
 		
 		// find first and last indices
-		int first = firstIndexOf(myTerms, pre, new Term.PrefixOrder(prefix.length()));		
-		int last = lastIndexOf(myTerms, pre, new Term.PrefixOrder(prefix.length()));
+		int first = terms.firstIndexOf(prefix);
 		
-		// return empty string if first or last isn't there
-		if (first == -1 || last == -1) 
+		// return empty string if there is no match
+		if (first == -1) 
 			return "";
+		int last = terms.lastIndexOf(prefix);
 		
-		// find term with max weight
-		double maxWeight = -1;
-		Term max = new Term("", 0);
+		if (s.myMaxTree != null)
+			return terms.word(maxIndex(terms, s.myMaxTree, first, last));
 		
-		for (int i = first; i <= last; i++) {
-			if (myTerms[i].getWeight() > maxWeight) {
-				maxWeight = myTerms[i].getWeight();
-				max = myTerms[i];
+		// find term with max weight
+		int max = first;
+		for (int i = first + 1; i <= last; i++) {
+			if (terms.weight(i) > terms.weight(max)) {
+				max = i;
 			}			
 		}
 		
-		return max.getWord();
-		
-		
-		/*PriorityQueue<Term> pq = new PriorityQueue<Term>(new Term.ReverseWeightOrder());
-		for (int i = first; i <= last; i++) {
-			pq.add(myTerms[i]);
-		}
-		
-		return pq.poll().getWord();*/
+		return terms.word(max);
 	}
 
 }
@@ -0,0 +1,583 @@
+import java.util.Arrays;
+
+/**
+ * Trie implementation of Autocompletor that keeps the whole trie in flat
+ * primitive arrays instead of one Node object per character. Nodes are
+ * numbered in breadth-first order, so the children of every node occupy a
+ * contiguous block of ids and are sorted by their edge label. Answers
+ * topKMatches and topMatch exactly like TrieAutocomplete, using the same
+ * subtree max weight pruning.
+ *
+ */
+public class CompactTrieAutocomplete implements Autocompletor {
+
+	/**
+	 * Distinct words in the trie, in lexicographic order. A word id is an
+	 * index into this array.
+	 */
+	private String[] myWords;
+
+	/**
+	 * myLabels[i] is the character on the edge leading into node i. The root
+	 * (node 0) has no label.
+	 */
+	private char[] myLabels;
+
+	/**
+	 * The children of node i are the nodes myChildStart[i] up to (but not
+	 * including) myChildStart[i+1]. Has one more entry than there are nodes.
+	 */
+	private int[] myChildStart;
+
+	/**
+	 * Word id of the word ending at node i, or -1 if no word ends there.
+	 */
+	private int[] myWordIds;
+
+	/**
+	 * Weight of the word ending at node i, or -1 if no word ends there.
+	 */
+	private double[] myWeights;
+
+	/**
+	 * The maximum weight of any word in the subtrie rooted at node i.
+	 */
+	private double[] mySubtreeMaxWeight;
+
+	private int myNodeCount;
+
+	/**
+	 * The largest k answered from the top-k cache, or 0 if there is no cache.
+	 */
+	private int myCacheK;
+
+	/**
+	 * The cached top words of node i, in descending weight order, are the word
+	 * ids myCache[myCacheStart[i]] up to (but not including)
+	 * myCache[myCacheStart[i+1]]. Null if there is no cache.
+	 */
+	private int[] myCacheStart;
+	private int[] myCache;
+
+	/**
+	 * Constructor method for CompactTrieAutocomplete. If a word appears more
+	 * than once in terms, the weight of its last occurrence is used, the same
+	 * as repeated adds to TrieAutocomplete.
+	 *
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i].
+	 * @throws a
+	 *             NullPointerException if either argument or any word is null
+	 * @throws an
+	 *             IllegalArgumentException if any weight is negative
+	 */
+	public CompactTrieAutocomplete(String[] terms, double[] weights) {
+		this(terms, weights, 0);
+	}
+
+	/**
+	 * Builds the trie and also stores, at every node, the ids of the top
+	 * cacheK words below it. topKMatches with k no larger than cacheK is then
+	 * a walk down the prefix plus an array copy; larger k fall back to the
+	 * best-first search.
+	 *
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i].
+	 * @param cacheK
+	 *            - The number of words cached per node, 0 for no cache
+	 * @throws a
+	 *             NullPointerException if either argument or any word is null
+	 * @throws an
+	 *             IllegalArgumentException if any weight or cacheK is negative
+	 */
+	public CompactTrieAutocomplete(String[] terms, double[] weights, int cacheK) {
+		if (terms == null || weights == null)
+			throw new NullPointerException("One or more arguments null");
+		if (cacheK < 0)
+			throw new IllegalArgumentException("cacheK is negative");
+
+		// sort the terms, stable so that duplicates keep their input order
+		Term[] sorted = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		Arrays.sort(sorted);
+
+		// keep the last occurrence of every word
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i + 1 < sorted.length && sorted[i].getWord().equals(sorted[i + 1].getWord()))
+				continue;
+			sorted[distinct++] = sorted[i];
+		}
+		myWords = new String[distinct];
+		double[] wordWeights = new double[distinct];
+		for (int i = 0; i < distinct; i++) {
+			myWords[i] = sorted[i].getWord();
+			wordWeights[i] = sorted[i].getWeight();
+		}
+
+		build(wordWeights);
+		if (cacheK > 0)
+			buildCache(wordWeights, cacheK);
+	}
+
+	/**
+	 * Lays the trie out breadth-first. Every node covers the range of sorted
+	 * words [lo, hi) that share its prefix; grouping that range by the next
+	 * character gives the node's children, which are appended to the end of
+	 * the arrays, so each node's children end up next to each other.
+	 */
+	private void build(double[] wordWeights) {
+		int capacity = 16;
+		myLabels = new char[capacity];
+		myChildStart = new int[capacity + 1];
+		myWordIds = new int[capacity];
+		myWeights = new double[capacity];
+		int[] lo = new int[capacity];
+		int[] hi = new int[capacity];
+		int[] depth = new int[capacity];
+
+		// root covers every word
+		myNodeCount = 1;
+		lo[0] = 0;
+		hi[0] = myWords.length;
+
+		for (int node = 0; node < myNodeCount; node++) {
+			int start = lo[node];
+			int end = hi[node];
+			int d = depth[node];
+
+			// the word equal to this node's prefix sorts first in its range
+			myWordIds[node] = -1;
+			myWeights[node] = -1;
+			if (start < end && myWords[start].length() == d) {
+				myWordIds[node] = start;
+				myWeights[node] = wordWeights[start];
+				start++;
+			}
+
+			// one child per distinct character at position d
+			myChildStart[node] = myNodeCount;
+			while (start < end) {
+				char c = myWords[start].charAt(d);
+				int groupEnd = start + 1;
+				while (groupEnd < end && myWords[groupEnd].charAt(d) == c)
+					groupEnd++;
+
+				if (myNodeCount == capacity) {
+					capacity *= 2;
+					myLabels = Arrays.copyOf(myLabels, capacity);
+					myChildStart = Arrays.copyOf(myChildStart, capacity + 1);
+					myWordIds = Arrays.copyOf(myWordIds, capacity);
+					myWeights = Arrays.copyOf(myWeights, capacity);
+					lo = Arrays.copyOf(lo, capacity);
+					hi = Arrays.copyOf(hi, capacity);
+					depth = Arrays.copyOf(depth, capacity);
+				}
+				myLabels[myNodeCount] = c;
+				lo[myNodeCount] = start;
+				hi[myNodeCount] = groupEnd;
+				depth[myNodeCount] = d + 1;
+				myNodeCount++;
+				start = groupEnd;
+			}
+		}
+		myChildStart[myNodeCount] = myNodeCount;
+
+		// trim to size
+		myLabels = Arrays.copyOf(myLabels, myNodeCount);
+		myChildStart = Arrays.copyOf(myChildStart, myNodeCount + 1);
+		myWordIds = Arrays.copyOf(myWordIds, myNodeCount);
+		myWeights = Arrays.copyOf(myWeights, myNodeCount);
+
+		// children always have larger ids than their parent, so one pass
+		// from the back computes every subtree max weight bottom-up
+		mySubtreeMaxWeight = new double[myNodeCount];
+		for (int node = myNodeCount - 1; node >= 0; node--) {
+			double max = myWeights[node];
+			for (int child = myChildStart[node]; child < myChildStart[node + 1]; child++) {
+				max = Math.max(max, mySubtreeMaxWeight[child]);
+			}
+			mySubtreeMaxWeight[node] = max;
+		}
+	}
+
+	/**
+	 * Fills the top-k cache bottom-up. A node's top words are the best of its
+	 * own word and its children's top words, and each child's list is already
+	 * sorted, so they are merged by repeatedly taking the heaviest head. Lists
+	 * are first built in fixed slots of cacheK ids per node and then packed.
+	 */
+	private void buildCache(double[] wordWeights, int cacheK) {
+		if ((long) myNodeCount * cacheK > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("cacheK too large for " + myNodeCount + " nodes");
+
+		int[] slots = new int[myNodeCount * cacheK];
+		int[] counts = new int[myNodeCount];
+		int children = 0;
+		for (int node = 0; node < myNodeCount; node++) {
+			children = Math.max(children, myChildStart[node + 1] - myChildStart[node]);
+		}
+		int[] heads = new int[children];
+
+		long total = 0;
+		for (int node = myNodeCount - 1; node >= 0; node--) {
+			int first = myChildStart[node];
+			int last = myChildStart[node + 1];
+			int base = node * cacheK;
+			boolean ownWord = myWordIds[node] != -1;
+			for (int child = first; child < last; child++) {
+				heads[child - first] = 0;
+			}
+
+			int count = 0;
+			while (count < cacheK) {
+				// heaviest remaining candidate, -1 for this node's own word
+				int best = -2;
+				double bestWeight = -1;
+				if (ownWord) {
+					best = -1;
+					bestWeight = myWeights[node];
+				}
+				for (int child = first; child < last; child++) {
+					int head = heads[child - first];
+					if (head < counts[child]) {
+						double w = wordWeights[slots[child * cacheK + head]];
+						if (w > bestWeight) {
+							best = child;
+							bestWeight = w;
+						}
+					}
+				}
+				if (best == -2)
+					break;
+				if (best == -1) {
+					slots[base + count++] = myWordIds[node];
+					ownWord = false;
+				}
+				else {
+					slots[base + count++] = slots[best * cacheK + heads[best - first]++];
+				}
+			}
+			counts[node] = count;
+			total += count;
+		}
+
+		myCacheK = cacheK;
+		myCacheStart = new int[myNodeCount + 1];
+		myCache = new int[(int) total];
+		for (int node = 0; node < myNodeCount; node++) {
+			myCacheStart[node + 1] = myCacheStart[node] + counts[node];
+			System.arraycopy(slots, node * cacheK, myCache, myCacheStart[node], counts[node]);
+		}
+	}
+
+	/**
+	 * Returns the child of node labeled c, or -1 if there is none. Children
+	 * are sorted by label, so this is a binary search.
+	 */
+	private int child(int node, char c) {
+		int low = myChildStart[node];
+		int high = myChildStart[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (myLabels[mid] < c)
+				low = mid + 1;
+			else if (myLabels[mid] > c)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the node reached by following prefix from the root, or -1 if
+	 * no word starts with prefix.
+	 */
+	private int find(String prefix) {
+		int node = 0;
+		for (int i = 0; i < prefix.length() && node != -1; i++) {
+			node = child(node, prefix.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * Required by the Autocompletor interface. Returns an array containing the
+	 * k words in the trie with the largest weight which match the given
+	 * prefix, in descending weight order. If less than k words exist matching
+	 * the given prefix (including if no words exist), then the array instead
+	 * contains all those words.
+	 *
+	 * @param prefix
+	 *            - A prefix which all returned words must start with
+	 * @param k
+	 *            - The (maximum) number of words to be returned
+	 * @return An array of the k words with the largest weights among all words
+	 *         starting with prefix, in descending weight order.
+	 * @throws a
+	 *             NullPointerException if prefix is null
+	 */
+	@Override
+	public String[] topKMatches(String prefix, int k) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null.");
+
+		int start = find(prefix);
+		if (k <= 0 || start == -1 || myWordIds[start] == -1 && myChildStart[start] == myChildStart[start + 1])
+			return new String[0];
+
+		// small k are answered straight from the cache
+		if (k <= myCacheK) {
+			int from = myCacheStart[start];
+			int c = Math.min(k, myCacheStart[start + 1] - from);
+			String[] result = new String[c];
+			for (int i = 0; i < c; i++) {
+				result[i] = myWords[myCache[from + i]];
+			}
+			return result;
+		}
+
+		return search(start, k);
+	}
+
+	/**
+	 * Best-first search below node start. The heap holds both nodes, keyed
+	 * by their subtree max weight, and words, keyed by their own weight and
+	 * stored as -(node + 1). A word popped off the heap outweighs everything
+	 * left in it, so words come off in descending weight order and the search
+	 * stops as soon as k have been found.
+	 */
+	private String[] search(int start, int k) {
+		String[] found = new String[k];
+		int count = 0;
+
+		int[] heap = new int[16];
+		double[] keys = new double[16];
+		int size = 0;
+
+		heap[0] = start;
+		keys[0] = mySubtreeMaxWeight[start];
+		size = 1;
+
+		while (size > 0 && count < k) {
+			int top = heap[0];
+
+			// pop the max
+			size--;
+			heap[0] = heap[size];
+			keys[0] = keys[size];
+			siftDown(heap, keys, size, 0);
+
+			if (top < 0) {
+				found[count++] = myWords[myWordIds[-top - 1]];
+				continue;
+			}
+
+			int pushes = myChildStart[top + 1] - myChildStart[top] + 1;
+			if (size + pushes > heap.length) {
+				int capacity = Math.max(heap.length * 2, size + pushes);
+				heap = Arrays.copyOf(heap, capacity);
+				keys = Arrays.copyOf(keys, capacity);
+			}
+			if (myWordIds[top] != -1) {
+				heap[size] = -top - 1;
+				keys[size] = myWeights[top];
+				siftUp(heap, keys, size++);
+			}
+			for (int child = myChildStart[top]; child < myChildStart[top + 1]; child++) {
+				heap[size] = child;
+				keys[size] = mySubtreeMaxWeight[child];
+				siftUp(heap, keys, size++);
+			}
+		}
+
+		return count == k ? found : Arrays.copyOf(found, count);
+	}
+
+	private static void siftUp(int[] heap, double[] keys, int i) {
+		int item = heap[i];
+		double key = keys[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] >= key)
+				break;
+			heap[i] = heap[parent];
+			keys[i] = keys[parent];
+			i = parent;
+		}
+		heap[i] = item;
+		keys[i] = key;
+	}
+
+	private static void siftDown(int[] heap, double[] keys, int size, int i) {
+		int item = heap[i];
+		double key = keys[i];
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[child + 1] > keys[child])
+				child++;
+			if (keys[child] <= key)
+				break;
+			heap[i] = heap[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		heap[i] = item;
+		keys[i] = key;
+	}
+
+	/**
+	 * Given a prefix, returns the largest-weight word in the trie starting with
+	 * that prefix.
+	 *
+	 * @param prefix
+	 *            - the prefix the returned word should start with
+	 * @return The word with the largest weight starting with prefix, or an
+	 *         empty string if none exists
+	 * @throws a
+	 *             NullPointerException if the prefix is null
+	 */
+	@Override
+	public String topMatch(String prefix) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null.");
+
+		int node = find(prefix);
+		if (node == -1)
+			return "";
+
+		// follow the child holding the subtree max until reaching the word
+		while (mySubtreeMaxWeight[node] != myWeights[node]) {
+			for (int child = myChildStart[node]; child < myChildStart[node + 1]; child++) {
+				if (mySubtreeMaxWeight[child] == mySubtreeMaxWeight[node]) {
+					node = child;
+					break;
+				}
+			}
+		}
+
+		if (myWordIds[node] == -1)
+			return "";
+		return myWords[myWordIds[node]];
+	}
+
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 */
+	public int nodeCount() {
+		return myNodeCount;
+	}
+
+	/**
+	 * Returns the number of distinct words in the trie.
+	 */
+	public int size() {
+		return myWords.length;
+	}
+
+	/*
+	 * Rough object sizes for a 64-bit JVM with compressed oops and compact
+	 * strings, used by the footprint estimates below.
+	 */
+	static final int OBJECT_HEADER = 12;
+	static final int ARRAY_HEADER = 16;
+	static final int REFERENCE = 4;
+
+	static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	static long arrayBytes(int length, int elementSize) {
+		return align(ARRAY_HEADER + (long) length * elementSize);
+	}
+
+	static long stringBytes(String s) {
+		// String object plus its backing byte[], assuming Latin-1 contents
+		return align(OBJECT_HEADER + REFERENCE + 4 + 1 + 1) + arrayBytes(s.length(), 1);
+	}
+
+	/**
+	 * Returns an estimate of the heap used by this trie in bytes, including
+	 * the word Strings themselves.
+	 */
+	public long sizeInBytes() {
+		long bytes = arrayBytes(myWords.length, REFERENCE);
+		for (String word : myWords) {
+			bytes += stringBytes(word);
+		}
+		bytes += arrayBytes(myNodeCount, 2);
+		bytes += arrayBytes(myNodeCount + 1, 4);
+		bytes += arrayBytes(myNodeCount, 4);
+		bytes += arrayBytes(myNodeCount, 8);
+		bytes += arrayBytes(myNodeCount, 8);
+		return bytes + cacheSizeInBytes();
+	}
+
+	/**
+	 * Returns the part of sizeInBytes spent on the top-k cache, 0 if there is
+	 * no cache.
+	 */
+	public long cacheSizeInBytes() {
+		if (myCache == null)
+			return 0;
+		return arrayBytes(myCacheStart.length, 4) + arrayBytes(myCache.length, 4);
+	}
+
+	/**
+	 * Returns an estimate of the heap used by a Node-based TrieAutocomplete in
+	 * bytes, counted the same way as sizeInBytes so the two can be compared.
+	 * Each Node pays for itself, its one-character myInfo String, its
+	 * HashMap of children and one map entry (plus a boxed key for characters
+	 * outside the Character cache) in its parent's map.
+	 */
+	public static long sizeInBytes(TrieAutocomplete trie) {
+		long bytes = 0;
+		java.util.ArrayDeque<Node> stack = new java.util.ArrayDeque<Node>();
+		stack.push(trie.myRoot);
+		while (!stack.isEmpty()) {
+			Node current = stack.pop();
+			bytes += align(OBJECT_HEADER + 4 * REFERENCE + 1 + 8 + 8);
+			bytes += stringBytes(current.myInfo);
+			bytes += align(OBJECT_HEADER + REFERENCE + 4 * 4 + 4);
+			if (!current.children.isEmpty()) {
+				int table = Integer.highestOneBit(Math.max(1, current.children.size() * 4 / 3)) * 2;
+				bytes += arrayBytes(Math.max(16, table), REFERENCE);
+			}
+			if (current.isWord)
+				bytes += stringBytes(current.myWord);
+			for (char c : current.children.keySet()) {
+				bytes += align(OBJECT_HEADER + 4 + 3 * REFERENCE);
+				if (c > 127)
+					bytes += align(OBJECT_HEADER + 2);
+				stack.push(current.getChild(c));
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns a short report comparing the footprint of this trie with the
+	 * footprint of a TrieAutocomplete holding the same words.
+	 */
+	public String memoryReport(TrieAutocomplete trie) {
+		long compact = sizeInBytes();
+		long nodes = sizeInBytes(trie);
+		int words = Math.max(1, size());
+		long cache = cacheSizeInBytes();
+		return String.format("words = %d, nodes = %d%n"
+				+ "compact trie = %d bytes (%.1f bytes/term)%n"
+				+ "top-k cache  = %d bytes (%.1f bytes/term, k = %d)%n"
+				+ "node trie    = %d bytes (%.1f bytes/term)%n"
+				+ "ratio        = %.2fx",
+				size(), myNodeCount, compact, (double) compact / words,
+				cache, (double) cache / words, myCacheK,
+				nodes, (double) nodes / words, (double) nodes / Math.max(1, compact));
+	}
+}
@@ -0,0 +1,93 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures SnapshotAutocomplete query throughput from 1 thread up to all
+ * available cores, while a writer thread keeps updating weights so new
+ * snapshots are built and published throughout the run.
+ *
+ * Usage: java ConcurrentAutocompleteBenchmark [number of terms] [seconds per run]
+ *
+ */
+public class ConcurrentAutocompleteBenchmark {
+	public static int RANDOM_SEED = 1234;
+	public static int K = 10;
+
+	/**
+	 * Runs readers threads against auto for the given time and returns the
+	 * total number of queries answered per second.
+	 */
+	public static double throughput(final SnapshotAutocomplete auto, final String[] terms,
+			int readers, long millis) throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong queries = new AtomicLong();
+
+		Thread[] threads = new Thread[readers];
+		for (int t = 0; t < readers; t++) {
+			final Random random = new Random(RANDOM_SEED + t);
+			threads[t] = new Thread(() -> {
+				long count = 0;
+				while (running.get()) {
+					String word = terms[random.nextInt(terms.length)];
+					String prefix = word.substring(0, Math.min(word.length(), 1 + random.nextInt(3)));
+					auto.topKMatches(prefix, K);
+					count++;
+				}
+				queries.addAndGet(count);
+			});
+		}
+
+		// keep the snapshots changing while the readers run
+		final Random random = new Random(RANDOM_SEED - 1);
+		Thread writer = new Thread(() -> {
+			while (running.get()) {
+				auto.update(terms[random.nextInt(terms.length)], random.nextInt(1000000));
+				try {
+					Thread.sleep(1);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+
+		long start = System.nanoTime();
+		writer.start();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(millis);
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		writer.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		return queries.get() / seconds;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int n = 200000;
+		long millis = 2000;
+		if (args.length >= 1)
+			n = Integer.parseInt(args[0]);
+		if (args.length >= 2)
+			millis = (long) (Double.parseDouble(args[1]) * 1000);
+
+		ZipfDictionary dictionary = new ZipfDictionary(n, RANDOM_SEED);
+		String[] terms = dictionary.words();
+		double[] weights = dictionary.weights();
+		SnapshotAutocomplete auto = new SnapshotAutocomplete(terms, weights);
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		double single = 0;
+		for (int readers = 1; readers <= cores; readers = readers < cores ? Math.min(cores, readers * 2) : cores + 1) {
+			double rate = throughput(auto, terms, readers, millis);
+			if (readers == 1)
+				single = rate;
+			System.out.printf("%3d threads: %12.0f queries/s (%.2fx)%n", readers, rate, rate / single);
+		}
+	}
+}
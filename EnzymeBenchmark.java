@@ -0,0 +1,99 @@
+import java.util.Random;
+
+/**
+ * Compares EnzymeDigest with LinkStrand.cutAndSplice on a random strand: one
+ * enzyme (EcoRI), and a panel of restriction enzymes applied either one
+ * after another with cutAndSplice, converting back to a single-node
+ * LinkStrand between enzymes since cutAndSplice needs one, or all at once
+ * with EnzymeDigest. The panel results can differ where two enzymes' sites
+ * overlap, since applying them in turn favors the earlier enzyme. The panel
+ * leaves out enzymes such as NotI (gcggccgc) whose sites can overlap each
+ * other, which cutAndSplice does not handle.
+ *
+ * Usage: java EnzymeBenchmark [millions of bases] [runs per measurement]
+ *
+ */
+public class EnzymeBenchmark {
+	public static int RANDOM_SEED = 1234;
+
+	public static final String[] PANEL = { "gaattc", "ggatcc", "aagctt", "cctgcagg", "ctcgag", "ctgcag",
+			"gtcgac", "cccggg", "ggtacc", "gagctc", "tctaga", "actagt", "agtact", "ccatgg", "catatg", "agatct",
+			"aggcct", "gatatc", "gttaac", "acgcgt", "gggccc", "gacgtc", "cctagg", "ggcgcgcc" };
+
+	public static final String SPLICEE = "nnnnnnnnnnnnnnnnnnnn";
+
+	/**
+	 * Returns size bases drawn uniformly from cgat.
+	 */
+	public static String randomDna(int size, long seed) {
+		Random random = new Random(seed);
+		char[] bases = new char[size];
+		for (int i = 0; i < size; i++) {
+			bases[i] = "cgat".charAt(random.nextInt(4));
+		}
+		return new String(bases);
+	}
+
+	/**
+	 * Applies every enzyme of the panel in turn with LinkStrand.cutAndSplice.
+	 */
+	public static IDnaStrand sequential(String dna, String[] panel) {
+		IDnaStrand strand = new LinkStrand(dna);
+		for (String enzyme : panel) {
+			strand = new LinkStrand(strand.toString()).cutAndSplice(enzyme, SPLICEE);
+		}
+		return strand;
+	}
+
+	/**
+	 * Returns the best time in milliseconds of runs runs of task, after one
+	 * warmup run.
+	 */
+	public static double time(Runnable task, int runs) {
+		task.run();
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			task.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1e6;
+	}
+
+	public static void main(String[] args) {
+		int millions = 20;
+		int runs = 3;
+		if (args.length >= 1)
+			millions = Integer.parseInt(args[0]);
+		if (args.length >= 2)
+			runs = Integer.parseInt(args[1]);
+
+		final String dna = randomDna(millions * 1000000, RANDOM_SEED);
+		final LinkStrand strand = new LinkStrand(dna);
+		System.out.printf("%d million bases, %d enzymes in the panel%n", millions, PANEL.length);
+
+		final EnzymeDigest one = new EnzymeDigest(PANEL[0], SPLICEE);
+		if (!one.cutAndSplice(strand).toString().equals(strand.cutAndSplice(PANEL[0], SPLICEE).toString()))
+			throw new IllegalStateException("EnzymeDigest and cutAndSplice differ.");
+		System.out.printf("%-40s %10.1f ms%n", "one enzyme, LinkStrand.cutAndSplice",
+				time(() -> strand.cutAndSplice(PANEL[0], SPLICEE), runs));
+		System.out.printf("%-40s %10.1f ms%n", "one enzyme, EnzymeDigest",
+				time(() -> one.cutAndSplice(strand), runs));
+
+		final EnzymeDigest panel = new EnzymeDigest(PANEL, fill(PANEL.length, SPLICEE));
+		System.out.printf("%-40s %10.1f ms%n", "panel, cutAndSplice per enzyme", time(() -> sequential(dna, PANEL), runs));
+		System.out.printf("%-40s %10.1f ms%n", "panel, EnzymeDigest", time(() -> panel.cutAndSplice(strand), runs));
+		System.out.printf("%-40s %10.1f ms%n", "panel, EnzymeDigest into RopeStrand",
+				time(() -> panel.cutAndSplice(new RopeStrand(dna)), runs));
+		System.out.printf("sizes after the panel: %d per enzyme, %d at once%n", sequential(dna, PANEL).size(),
+				panel.cutAndSplice(strand).size());
+	}
+
+	private static String[] fill(int n, String s) {
+		String[] strings = new String[n];
+		for (int i = 0; i < n; i++) {
+			strings[i] = s;
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,135 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the serial HuffProcessor with AdaptiveHuffProcessor, for ratio
+ * against speed, and with ParallelHuffProcessor on pools of 1 thread up to
+ * all available cores, compressing and decompressing a synthetic log file in
+ * memory. The serial processors are also run from file to file through
+ * MappedBitInputStream and MappedBitOutputStream. Every run is checked to
+ * decompress to the original input.
+ *
+ * Usage: java HuffBenchmark [megabytes of input] [runs per measurement]
+ *
+ */
+public class HuffBenchmark {
+	public static int RANDOM_SEED = 1234;
+
+	/**
+	 * Runs the processor over data in memory, compressing if compress is
+	 * true and decompressing otherwise, and returns the output.
+	 */
+	public static byte[] process(Processor processor, byte[] data, boolean compress) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 64);
+		BitOutputStream out = new BitOutputStream(bytes);
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(data));
+		if (compress)
+			processor.compress(in, out);
+		else
+			processor.decompress(in, out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Compresses and decompresses data runs times with processor after one
+	 * warmup, and prints the best compression and decompression rates in
+	 * MB/s of uncompressed data.
+	 */
+	public static void measure(String name, Processor processor, byte[] data, int runs) {
+		byte[] compressed = process(processor, data, true);
+		if (!Arrays.equals(process(processor, compressed, false), data))
+			throw new IllegalStateException(name + " did not decompress to its input.");
+
+		double compress = Double.MAX_VALUE;
+		double decompress = Double.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			process(processor, data, true);
+			long middle = System.nanoTime();
+			process(processor, compressed, false);
+			long end = System.nanoTime();
+			compress = Math.min(compress, (middle - start) / 1e9);
+			decompress = Math.min(decompress, (end - middle) / 1e9);
+		}
+
+		double megabytes = data.length / 1e6;
+		System.out.printf("%-32s %10.1f %12.1f %8.3f%n", name, megabytes / compress, megabytes / decompress,
+				(double) compressed.length / data.length);
+	}
+
+	/**
+	 * Like measure, but reads and writes temporary files through
+	 * MappedBitInputStream and MappedBitOutputStream.
+	 */
+	public static void measureFiles(String name, Processor processor, byte[] data, int runs) throws IOException {
+		File original = File.createTempFile("huff", ".txt");
+		File compressed = File.createTempFile("huff", ".hf");
+		File decompressed = File.createTempFile("huff", ".out");
+		try {
+			Files.write(original.toPath(), data);
+			double compress = Double.MAX_VALUE;
+			double decompress = Double.MAX_VALUE;
+			for (int run = 0; run <= runs; run++) {
+				long start = System.nanoTime();
+				MappedBitOutputStream out = new MappedBitOutputStream(compressed);
+				processor.compress(new MappedBitInputStream(original), out);
+				out.close();
+				long middle = System.nanoTime();
+				out = new MappedBitOutputStream(decompressed);
+				processor.decompress(new MappedBitInputStream(compressed), out);
+				out.close();
+				long end = System.nanoTime();
+				if (run == 0) {
+					// warmup and check
+					if (!Arrays.equals(Files.readAllBytes(decompressed.toPath()), data))
+						throw new IllegalStateException(name + " did not decompress to its input.");
+					continue;
+				}
+				compress = Math.min(compress, (middle - start) / 1e9);
+				decompress = Math.min(decompress, (end - middle) / 1e9);
+			}
+
+			double megabytes = data.length / 1e6;
+			System.out.printf("%-32s %10.1f %12.1f %8.3f%n", name, megabytes / compress, megabytes / decompress,
+					(double) compressed.length() / data.length);
+		} finally {
+			original.delete();
+			compressed.delete();
+			decompressed.delete();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int megabytes = 64;
+		int runs = 3;
+		if (args.length >= 1)
+			megabytes = Integer.parseInt(args[0]);
+		if (args.length >= 2)
+			runs = Integer.parseInt(args[1]);
+
+		byte[] data = HuffCorpus.logLike(megabytes << 20, RANDOM_SEED);
+		System.out.printf("%d MB of log text%n", megabytes);
+		System.out.printf("%-32s %10s %12s %8s%n", "", "comp MB/s", "decomp MB/s", "ratio");
+
+		measure("HuffProcessor", new HuffProcessor(), data, runs);
+		measure("HuffProcessor, canonical", new HuffProcessor(0, true), data, runs);
+		measure("AdaptiveHuffProcessor, order 0", new AdaptiveHuffProcessor(0), data, runs);
+		measure("AdaptiveHuffProcessor, order 1", new AdaptiveHuffProcessor(1), data, runs);
+		measureFiles("HuffProcessor, mapped files", new HuffProcessor(), data, runs);
+		measureFiles("Adaptive order 0, mapped files", new AdaptiveHuffProcessor(0), data, runs);
+		measureFiles("Adaptive order 1, mapped files", new AdaptiveHuffProcessor(1), data, runs);
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(cores, threads * 2) : cores + 1) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			measure("ParallelHuffProcessor, " + threads + " threads",
+					new ParallelHuffProcessor(ParallelHuffProcessor.DEFAULT_CHUNK_SIZE, pool), data, runs);
+			pool.shutdown();
+		}
+	}
+}
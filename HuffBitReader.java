@@ -0,0 +1,125 @@
+import java.io.IOException;
+
+/**
+ * Reads a BitInputStream through a 64-bit buffer so that bits can be looked
+ * at before they are consumed, which is what the table-driven HuffDecoder
+ * needs. The underlying stream is always read a whole byte at a time (four
+ * bytes at a time from a MappedBitInputStream), so the reader should be
+ * created where the stream starts (or at least at a byte boundary) and then
+ * used for everything read after that point.
+ *
+ */
+public class HuffBitReader {
+	private final BitInputStream myIn;
+
+	// myIn, if it is a MappedBitInputStream, which can be read 32 bits at a
+	// time without losing the bits at its end
+	private final MappedBitInputStream myMapped;
+
+	/**
+	 * The next myCount bits of input are the low myCount bits of myBuffer,
+	 * most significant first.
+	 */
+	private long myBuffer;
+	private int myCount;
+	private boolean myEnded;
+
+	public HuffBitReader(BitInputStream in) {
+		myIn = in;
+		myMapped = in instanceof MappedBitInputStream ? (MappedBitInputStream) in : null;
+	}
+
+	/**
+	 * Buffers at least n bits, or all that remain.
+	 */
+	private void fill(int n) {
+		while (myCount < n && !myEnded) {
+			if (myMapped != null && myCount <= 32 && myMapped.bitsRemaining() >= 32) {
+				myBuffer = (myBuffer << 32) | (myMapped.readBits(32) & 0xffffffffL);
+				myCount += 32;
+				continue;
+			}
+			int b = myIn.readBits(8);
+			if (b == -1)
+				myEnded = true;
+			else {
+				myBuffer = (myBuffer << 8) | b;
+				myCount += 8;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether at least n more bits can be read.
+	 */
+	public boolean has(int n) {
+		fill(n);
+		return myCount >= n;
+	}
+
+	/**
+	 * Returns the next n bits, 0 <= n <= 32, without consuming them. Bits
+	 * past the end of the input read as 0.
+	 */
+	public int peekBits(int n) {
+		fill(n);
+		long mask = (1L << n) - 1;
+		if (myCount >= n)
+			return (int) ((myBuffer >>> (myCount - n)) & mask);
+		return (int) ((myBuffer << (n - myCount)) & mask);
+	}
+
+	/**
+	 * Consumes n bits, which must have been checked with has(n).
+	 */
+	public void skipBits(int n) {
+		myCount -= n;
+	}
+
+	/**
+	 * Reads up to len bytes into b and returns the number read, which is
+	 * less than len only at the end of the input. At a byte boundary the
+	 * buffered bytes are copied first and the rest is read from the stream
+	 * with a single bulk read, which a MappedBitInputStream copies straight
+	 * from its buffer.
+	 */
+	public int readBytes(byte[] b, int off, int len) {
+		int n = 0;
+		while (n < len && myCount >= 8) {
+			myCount -= 8;
+			b[off + n++] = (byte) (myBuffer >>> myCount);
+		}
+		if (myCount > 0) {
+			while (n < len && has(8)) {
+				b[off + n++] = (byte) readBits(8);
+			}
+			return n;
+		}
+		try {
+			while (n < len && !myEnded) {
+				int read = myIn.read(b, off + n, len - n);
+				if (read <= 0)
+					myEnded = true;
+				else
+					n += read;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return n;
+	}
+
+	/**
+	 * Reads the next n bits, 0 <= n <= 32, like BitInputStream.readBits:
+	 * returns -1 if fewer than n bits are left.
+	 */
+	public int readBits(int n) {
+		if (!has(n)) {
+			myCount = 0;
+			return -1;
+		}
+		int bits = peekBits(n);
+		myCount -= n;
+		return bits;
+	}
+}
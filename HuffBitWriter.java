@@ -0,0 +1,50 @@
+/**
+ * Collects codes in a 64-bit accumulator and hands them to a
+ * BitOutputStream a 32-bit word at a time, instead of making one writeBits
+ * call per code. Nothing reaches the stream until the accumulator holds a whole
+ * word, so flush must be called before writing to the stream directly.
+ *
+ */
+public class HuffBitWriter {
+	private final BitOutputStream myOut;
+
+	/**
+	 * The low myCount bits of myBuffer, most significant first, have not
+	 * been written yet. myCount is always below 32 between calls.
+	 */
+	private long myBuffer;
+	private int myCount;
+
+	public HuffBitWriter(BitOutputStream out) {
+		myOut = out;
+	}
+
+	/**
+	 * Writes the low length bits of code, 0 <= length <= 64.
+	 */
+	public void writeBits(int length, long code) {
+		if (length > 32) {
+			writeBits(length - 32, code >>> 32);
+			length = 32;
+		}
+		myBuffer = (myBuffer << length) | (code & ((1L << length) - 1));
+		myCount += length;
+		if (myCount >= 32) {
+			myCount -= 32;
+			// two halves, since BitOutputStream.writeBits sign-extends a
+			// 32-bit value over the bits it is still holding
+			int word = (int) (myBuffer >>> myCount);
+			myOut.writeBits(16, word >>> 16);
+			myOut.writeBits(16, word & 0xffff);
+		}
+	}
+
+	/**
+	 * Writes out the bits still held, without padding.
+	 */
+	public void flush() {
+		if (myCount > 0)
+			myOut.writeBits(myCount, (int) myBuffer);
+		myCount = 0;
+	}
+}
@@ -0,0 +1,124 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures every serial Huffman mode on every HuffCorpus: compression and
+ * decompression speed in MB/s of uncompressed data, bytes allocated per MB
+ * of uncompressed data, and compression ratio. Input and output are held in
+ * ByteBuffers reached through MappedBitInputStream and MappedBitOutputStream,
+ * and the output buffers are allocated once up front, so the numbers are
+ * those of the coders rather than of the stock bit streams. Allocation is
+ * read from the per-thread counter used by AllocationBenchmark. Before it is
+ * timed, each mode's round trip is checked both through those streams and
+ * through the plain BitInputStream and BitOutputStream.
+ *
+ * A new mode is compared against the others by adding it to PROCESSOR_NAMES
+ * and processors().
+ *
+ * Usage: java HuffCodecBenchmark [megabytes per corpus] [runs per measurement]
+ *
+ */
+public class HuffCodecBenchmark {
+	public static int RANDOM_SEED = 1234;
+	public static int WARMUP = 2;
+
+	public static final String[] PROCESSOR_NAMES = { "HuffProcessor", "canonical", "64 KB blocks",
+			"adaptive order 0", "adaptive order 1" };
+
+	/**
+	 * Returns a new processor for each of PROCESSOR_NAMES.
+	 */
+	public static Processor[] processors() {
+		return new Processor[] { new HuffProcessor(), new HuffProcessor(0, true), new HuffProcessor(1 << 16),
+				new AdaptiveHuffProcessor(0), new AdaptiveHuffProcessor(1) };
+	}
+
+	/**
+	 * Compresses or decompresses input into output, which is cleared first,
+	 * and returns the number of bytes written.
+	 */
+	public static int process(Processor processor, byte[] input, ByteBuffer output, boolean compress) {
+		output.clear();
+		MappedBitInputStream in = new MappedBitInputStream(ByteBuffer.wrap(input));
+		MappedBitOutputStream out = new MappedBitOutputStream(output);
+		if (compress)
+			processor.compress(in, out);
+		else
+			processor.decompress(in, out);
+		out.close();
+		return output.position();
+	}
+
+	/**
+	 * Runs process runs times after WARMUP runs and returns the best time in
+	 * seconds and the fewest bytes allocated by a run.
+	 */
+	public static double[] time(Processor processor, byte[] input, ByteBuffer output, boolean compress, int runs) {
+		for (int run = 0; run < WARMUP; run++) {
+			process(processor, input, output, compress);
+		}
+
+		double seconds = Double.MAX_VALUE;
+		long allocated = Long.MAX_VALUE;
+		for (int run = 0; run < runs; run++) {
+			long before = AllocationBenchmark.allocatedBytes();
+			long start = System.nanoTime();
+			process(processor, input, output, compress);
+			long end = System.nanoTime();
+			long after = AllocationBenchmark.allocatedBytes();
+			seconds = Math.min(seconds, (end - start) / 1e9);
+			allocated = Math.min(allocated, after - before);
+		}
+		return new double[] { seconds, allocated };
+	}
+
+	public static void main(String[] args) {
+		int megabytes = 8;
+		int runs = 3;
+		if (args.length >= 1)
+			megabytes = Integer.parseInt(args[0]);
+		if (args.length >= 2)
+			runs = Integer.parseInt(args[1]);
+
+		System.out.printf("%d MB per corpus, best of %d runs%n", megabytes, runs);
+		System.out.printf("%-14s %-18s %10s %12s %12s %12s %8s%n", "corpus", "processor", "comp MB/s",
+				"decomp MB/s", "comp B/MB", "decomp B/MB", "ratio");
+
+		for (String corpus : HuffCorpus.NAMES) {
+			byte[] data = HuffCorpus.generate(corpus, megabytes << 20, RANDOM_SEED);
+			double size = data.length / 1e6;
+			ByteBuffer compressedBuffer = ByteBuffer.allocate(data.length + data.length / 8 + (1 << 16));
+			ByteBuffer decompressedBuffer = ByteBuffer.allocate(data.length);
+
+			Processor[] processors = processors();
+			for (int i = 0; i < processors.length; i++) {
+				// check the round trip before timing it
+				int length = process(processors[i], data, compressedBuffer, true);
+				byte[] compressed = Arrays.copyOf(compressedBuffer.array(), length);
+				process(processors[i], compressed, decompressedBuffer, false);
+				if (decompressedBuffer.position() != data.length
+						|| !Arrays.equals(Arrays.copyOf(decompressedBuffer.array(), data.length), data))
+					throw new IllegalStateException(PROCESSOR_NAMES[i] + " did not decompress " + corpus + ".");
+
+				// and through plain BitInputStream and BitOutputStream, which
+				// take a different path through every processor
+				byte[] plain = HuffBenchmark.process(processors[i], data, true);
+				if (!Arrays.equals(HuffBenchmark.process(processors[i], plain, false), data))
+					throw new IllegalStateException(PROCESSOR_NAMES[i] + " did not decompress " + corpus
+							+ " through plain streams.");
+
+				double[] comp = time(processors[i], data, compressedBuffer, true, runs);
+				double[] decomp = time(processors[i], compressed, decompressedBuffer, false, runs);
+				if (data.length == 0) {
+					// no rates for an empty input: report bytes instead
+					System.out.printf("%-14s %-18s %10s %12s %10.0f B %10.0f B %6d B%n", corpus,
+							PROCESSOR_NAMES[i], "-", "-", comp[1], decomp[1], length);
+					continue;
+				}
+				System.out.printf("%-14s %-18s %10.1f %12.1f %12.0f %12.0f %8.3f%n", corpus, PROCESSOR_NAMES[i],
+						size / comp[0], size / decomp[0], comp[1] / size, decomp[1] / size,
+						(double) length / data.length);
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates reproducible inputs for the Huffman benchmarks, so that every
+ * coder can be compared on the same data on any machine without downloading
+ * a corpus. The same name, size and seed always produce the same bytes.
+ *
+ * The corpora span what a byte coder meets in practice: uniform random bytes
+ * (incompressible), skewed text (Zipf-distributed words), log-like lines
+ * (timestamps and small vocabularies), a single repeated symbol (the
+ * degenerate one-leaf tree) and the empty input.
+ *
+ */
+public class HuffCorpus {
+	public static final String[] NAMES = { "uniform", "skewed text", "log-like", "single symbol", "empty" };
+
+	// distinct words in the skewed text
+	public static int VOCABULARY = 5000;
+
+	/**
+	 * Returns size bytes of the corpus called name, one of NAMES.
+	 *
+	 * @throws an IllegalArgumentException if name is not a corpus
+	 */
+	public static byte[] generate(String name, int size, long seed) {
+		if (name.equals("uniform"))
+			return uniform(size, seed);
+		if (name.equals("skewed text"))
+			return skewedText(size, seed);
+		if (name.equals("log-like"))
+			return logLike(size, seed);
+		if (name.equals("single symbol"))
+			return singleSymbol(size);
+		if (name.equals("empty"))
+			return new byte[0];
+		throw new IllegalArgumentException("No corpus called " + name + ".");
+	}
+
+	/**
+	 * Returns size bytes drawn uniformly from all 256 values.
+	 */
+	public static byte[] uniform(int size, long seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * Returns size bytes of words drawn from a ZipfDictionary in proportion to
+	 * their weight, separated by spaces, with a sentence break every dozen
+	 * words or so.
+	 */
+	public static byte[] skewedText(int size, long seed) {
+		Random random = new Random(seed);
+		ZipfDictionary dictionary = new ZipfDictionary(VOCABULARY, seed);
+		StringBuilder text = new StringBuilder(size + 128);
+		while (text.length() < size) {
+			String[] words = dictionary.prefixes(ZipfDictionary.MAX_LENGTH, 1 + random.nextInt(24), random);
+			for (int i = 0; i < words.length; i++) {
+				text.append(i == 0 ? Character.toUpperCase(words[i].charAt(0)) + words[i].substring(1) : words[i]);
+				text.append(i == words.length - 1 ? ".\n" : " ");
+			}
+		}
+		return Arrays.copyOf(text.toString().getBytes(), size);
+	}
+
+	/**
+	 * Returns size bytes of log-like text: timestamped lines with a level, a
+	 * component and a message drawn from small vocabularies.
+	 */
+	public static byte[] logLike(int size, long seed) {
+		Random random = new Random(seed);
+		String[] levels = { "INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR" };
+		String[] components = { "http", "db", "cache", "auth", "scheduler", "worker" };
+		String[] messages = { "request completed", "connection opened", "connection closed",
+				"cache miss for key", "retrying operation", "user logged in", "timeout after" };
+
+		StringBuilder text = new StringBuilder(size + 128);
+		long time = 1500000000000L;
+		while (text.length() < size) {
+			time += random.nextInt(2000);
+			text.append(time).append(' ').append(levels[random.nextInt(levels.length)]).append(" [")
+					.append(components[random.nextInt(components.length)]).append("] ")
+					.append(messages[random.nextInt(messages.length)]).append(' ')
+					.append(random.nextInt(100000)).append('\n');
+		}
+		return Arrays.copyOf(text.toString().getBytes(), size);
+	}
+
+	/**
+	 * Returns size copies of the byte 'a'.
+	 */
+	public static byte[] singleSymbol(int size) {
+		byte[] data = new byte[size];
+		Arrays.fill(data, (byte) 'a');
+		return data;
+	}
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+
+/**
+ * Decodes Huffman codes a table lookup at a time instead of a tree step per
+ * bit. The root table is indexed by the next TABLE_BITS bits of input (fewer
+ * if no code is that long); its entry either names the symbol whose code
+ * those bits start with, along with the code's length, or, for codes longer
+ * than the table, points to a secondary table indexed by the bits that
+ * follow. A code of length L therefore takes 1 + L / TABLE_BITS lookups.
+ *
+ * An entry e >= 0 holds symbol e >>> 4 with code length e & 15; an entry
+ * e < 0 points to table -e - 1.
+ *
+ */
+public class HuffDecoder {
+
+	/**
+	 * Width of the root table in bits, at most 15. Tables hold 1 << width
+	 * entries, so wider tables resolve more codes in one lookup but take
+	 * longer to build.
+	 */
+	public static int TABLE_BITS = 10;
+
+	private final ArrayList<int[]> myTables = new ArrayList<int[]>();
+	private final ArrayList<Integer> myWidths = new ArrayList<Integer>();
+	private int[][] myTableArray;
+	private int[] myWidthArray;
+
+	/**
+	 * Builds the tables for the tree at root, as read from a header.
+	 *
+	 * @throws a HuffException if the tree is malformed
+	 */
+	public HuffDecoder(HuffNode root) {
+		if (root.value() != -1 && root.value() != HuffProcessor.PSEUDO_EOF)
+			throw new HuffException("Bad header.");
+		build(root);
+
+		myTableArray = myTables.toArray(new int[myTables.size()][]);
+		myWidthArray = new int[myWidths.size()];
+		for (int i = 0; i < myWidthArray.length; i++) {
+			myWidthArray[i] = myWidths.get(i);
+		}
+	}
+
+	/**
+	 * Builds the table for the subtree at node and returns its index.
+	 */
+	private int build(HuffNode node) {
+		int width = Math.min(Math.min(TABLE_BITS, 15), depth(node));
+		int index = myTables.size();
+		myTables.add(new int[1 << width]);
+		myWidths.add(width);
+		fill(index, width, node, 0, 0);
+		return index;
+	}
+
+	/**
+	 * Fills the entries of table index for the codes below node, which is
+	 * reached by the length bits of code.
+	 */
+	private void fill(int index, int width, HuffNode node, int code, int length) {
+		if (node.value() != -1) {
+			int[] table = myTables.get(index);
+			int shift = width - length;
+			for (int i = code << shift; i < (code + 1) << shift; i++) {
+				table[i] = node.value() << 4 | length;
+			}
+			return;
+		}
+		if (node.left() == null || node.right() == null)
+			throw new HuffException("Bad header.");
+		if (length == width) {
+			int sub = build(node);
+			myTables.get(index)[code] = -sub - 1;
+			return;
+		}
+		fill(index, width, node.left(), code << 1, length + 1);
+		fill(index, width, node.right(), code << 1 | 1, length + 1);
+	}
+
+	/**
+	 * Returns the length of the longest code below node.
+	 */
+	private static int depth(HuffNode node) {
+		if (node.value() != -1 || node.left() == null || node.right() == null)
+			return 0;
+		return 1 + Math.max(depth(node.left()), depth(node.right()));
+	}
+
+	/**
+	 * Reads one code from in and returns its symbol, or -1 if the input ends
+	 * partway through a code.
+	 */
+	public int decode(HuffBitReader in) {
+		int t = 0;
+		while (true) {
+			int width = myWidthArray[t];
+			int entry = myTableArray[t][in.peekBits(width)];
+			if (entry >= 0) {
+				int length = entry & 15;
+				if (!in.has(length))
+					return -1;
+				in.skipBits(length);
+				return entry >>> 4;
+			}
+			if (!in.has(width))
+				return -1;
+			in.skipBits(width);
+			t = -entry - 1;
+		}
+	}
+}
@@ -0,0 +1,352 @@
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * A canonical Huffman code trained once on sample messages and then shared
+ * by any number of small messages, so that no message pays for a tree
+ * header. A message is the model's 32-bit id, the message length in 7-bit
+ * groups (one byte below 128), and the codes of its bytes, padded with 0
+ * bits to a whole byte.
+ *
+ * Every byte value gets a code, even if the samples never use it, and codes
+ * are at most MAX_CODE_LENGTH bits, so a message decodes with one lookup in
+ * a single table per byte. The model holds only that table and the code
+ * arrays, and encode and decode allocate nothing but the arrays they
+ * return, so a model can be used from many threads at once.
+ *
+ * A model is persisted with write, as HUFF_MODEL_NUMBER followed by a
+ * canonical header holding its code lengths, and restored with read. Its id
+ * is a checksum of those lengths, so a restored model has the same id.
+ *
+ */
+public class HuffModel {
+
+	/**
+	 * Longest code a trained model uses, from 9 to 15. Decoding looks codes
+	 * up in a table of 1 << MAX_CODE_LENGTH entries.
+	 */
+	public static int MAX_CODE_LENGTH = 12;
+
+	// longest header: the id and a five-byte length
+	private static final int MAX_HEADER_BYTES = 9;
+
+	private final int[] myLengths;
+	private final long[] myCodes;
+	private final int myMaxLength;
+	private final int myId;
+
+	/**
+	 * Entry i holds symbol << 4 | length for the code that the top length
+	 * bits of i start with, or -1 for the PSEUDO_EOF code, which messages
+	 * never use; it is kept only so that the lengths form a canonical
+	 * header.
+	 */
+	private final int[] myTable;
+
+	private HuffModel(int[] lengths) {
+		myLengths = lengths;
+		myCodes = new long[lengths.length];
+		HuffProcessor.canonicalCodes(myLengths, myCodes);
+
+		int max = 0;
+		CRC32 crc = new CRC32();
+		for (int length : lengths) {
+			max = Math.max(max, length);
+			crc.update(length);
+		}
+		myMaxLength = max;
+		myId = (int) crc.getValue();
+
+		myTable = new int[1 << myMaxLength];
+		for (int symbol = 0; symbol <= HuffProcessor.PSEUDO_EOF; symbol++) {
+			int shift = myMaxLength - myLengths[symbol];
+			int start = (int) myCodes[symbol] << shift;
+			for (int i = start; i < start + (1 << shift); i++) {
+				myTable[i] = symbol == HuffProcessor.PSEUDO_EOF ? -1 : symbol << 4 | myLengths[symbol];
+			}
+		}
+	}
+
+	/**
+	 * Trains a model on samples, typical messages of the kind it will code.
+	 * Byte values the samples do not use still get (long) codes.
+	 */
+	public static HuffModel train(byte[]... samples) {
+		int[] counts = new int[HuffProcessor.ALPH_SIZE + 1];
+		for (byte[] sample : samples) {
+			for (byte b : sample) {
+				if (counts[b & 0xff] < Integer.MAX_VALUE / 2)
+					counts[b & 0xff]++;
+			}
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i]++;
+		}
+
+		// halve the counts, keeping every symbol, until no code is longer
+		// than the limit
+		int limit = Math.min(Math.max(MAX_CODE_LENGTH, 9), 15);
+		HuffNode root = tree(counts);
+		while (depth(root) > limit) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = (counts[i] + 1) / 2;
+			}
+			root = tree(counts);
+		}
+
+		int[] lengths = new int[counts.length];
+		extractLengths(root, 0, lengths);
+		return new HuffModel(lengths);
+	}
+
+	private static HuffNode tree(int[] counts) {
+		PriorityQueue<HuffNode> pq = new PriorityQueue<HuffNode>();
+		for (int i = 0; i < counts.length; i++) {
+			pq.add(new HuffNode(i, counts[i], null, null));
+		}
+		while (pq.size() > 1) {
+			HuffNode left = pq.poll();
+			HuffNode right = pq.poll();
+			pq.add(new HuffNode(-1, left.weight() + right.weight(), left, right));
+		}
+		return pq.poll();
+	}
+
+	private static int depth(HuffNode node) {
+		if (node.value() != -1)
+			return 0;
+		return 1 + Math.max(depth(node.left()), depth(node.right()));
+	}
+
+	private static void extractLengths(HuffNode current, int length, int[] lengths) {
+		if (current.value() != -1) {
+			lengths[current.value()] = length;
+			return;
+		}
+		extractLengths(current.left(), length + 1, lengths);
+		extractLengths(current.right(), length + 1, lengths);
+	}
+
+	/**
+	 * Returns the id every message coded with this model starts with.
+	 */
+	public int id() {
+		return myId;
+	}
+
+	/**
+	 * Returns the id at the start of the message at message[offset], to pick
+	 * the model to decode it with.
+	 *
+	 * @throws a HuffException if the message is too short to hold one
+	 */
+	public static int id(byte[] message, int offset) {
+		if (message.length - offset < 4)
+			throw new HuffException("Message is truncated.");
+		return (message[offset] & 0xff) << 24 | (message[offset + 1] & 0xff) << 16
+				| (message[offset + 2] & 0xff) << 8 | (message[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Writes the model to out, to be restored with read.
+	 */
+	public void write(BitOutputStream out) {
+		out.writeBits(HuffProcessor.BITS_PER_INT, HuffProcessor.HUFF_MODEL_NUMBER);
+		HuffProcessor.writeCanonicalHeader(myLengths, out);
+	}
+
+	/**
+	 * Reads a model written with write. The model should end the stream,
+	 * since a few bytes past it may be read ahead.
+	 *
+	 * @throws a HuffException if in does not hold a model
+	 */
+	public static HuffModel read(BitInputStream in) {
+		HuffBitReader bits = new HuffBitReader(in);
+		if (bits.readBits(HuffProcessor.BITS_PER_INT) != HuffProcessor.HUFF_MODEL_NUMBER)
+			throw new HuffException("Not a Huffman model.");
+		int[] lengths = HuffProcessor.readCanonicalLengths(bits);
+
+		// check that the lengths form a code, with a short enough code for
+		// every symbol
+		HuffProcessor.canonicalTree(lengths);
+		for (int symbol = 0; symbol <= HuffProcessor.PSEUDO_EOF; symbol++) {
+			if (lengths[symbol] == 0 || lengths[symbol] > 15)
+				throw new HuffException("Bad model.");
+		}
+		return new HuffModel(lengths);
+	}
+
+	/**
+	 * Returns the most bytes a message of length bytes can take, to size the
+	 * output of encode.
+	 */
+	public int maxEncodedLength(int length) {
+		return MAX_HEADER_BYTES + (int) (((long) length * myMaxLength + 7) / 8);
+	}
+
+	/**
+	 * Returns the message for message[offset, offset + length).
+	 */
+	public byte[] encode(byte[] message, int offset, int length) {
+		long bits = 0;
+		for (int i = offset; i < offset + length; i++) {
+			bits += myLengths[message[i] & 0xff];
+		}
+		byte[] out = new byte[headerLength(length) + (int) ((bits + 7) / 8)];
+		encode(message, offset, length, out, 0);
+		return out;
+	}
+
+	public byte[] encode(byte[] message) {
+		return encode(message, 0, message.length);
+	}
+
+	/**
+	 * Writes the message for message[offset, offset + length) to out from
+	 * outOffset on, and returns the number of bytes written. out must have
+	 * room for the encoded message, which is at most maxEncodedLength(length)
+	 * bytes.
+	 */
+	public int encode(byte[] message, int offset, int length, byte[] out, int outOffset) {
+		int o = writeHeader(length, out, outOffset);
+
+		// the low count bits of buffer are still to be written
+		long buffer = 0;
+		int count = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int current = message[i] & 0xff;
+			buffer = (buffer << myLengths[current]) | myCodes[current];
+			count += myLengths[current];
+			if (count >= 32) {
+				count -= 32;
+				int word = (int) (buffer >>> count);
+				out[o] = (byte) (word >>> 24);
+				out[o + 1] = (byte) (word >>> 16);
+				out[o + 2] = (byte) (word >>> 8);
+				out[o + 3] = (byte) word;
+				o += 4;
+			}
+		}
+		while (count > 0) {
+			count -= 8;
+			out[o++] = (byte) (count >= 0 ? buffer >>> count : buffer << -count);
+		}
+		return o - outOffset;
+	}
+
+	private static int headerLength(int length) {
+		int bytes = 5;
+		while (length >= 128) {
+			length >>>= 7;
+			bytes++;
+		}
+		return bytes;
+	}
+
+	private int writeHeader(int length, byte[] out, int o) {
+		out[o++] = (byte) (myId >>> 24);
+		out[o++] = (byte) (myId >>> 16);
+		out[o++] = (byte) (myId >>> 8);
+		out[o++] = (byte) myId;
+		while (length >= 128) {
+			out[o++] = (byte) (length & 127 | 128);
+			length >>>= 7;
+		}
+		out[o++] = (byte) length;
+		return o;
+	}
+
+	/**
+	 * Returns the length of the decoded message at message[offset].
+	 *
+	 * @throws a HuffException if the message belongs to another model or its
+	 *             header is cut short
+	 */
+	public int decodedLength(byte[] message, int offset) {
+		if (id(message, offset) != myId)
+			throw new HuffException("Message is for another model.");
+		int length = 0;
+		for (int shift = 0, i = offset + 4; shift < 32; shift += 7, i++) {
+			if (i >= message.length)
+				throw new HuffException("Message is truncated.");
+			length |= (message[i] & 127) << shift;
+			if ((message[i] & 128) == 0) {
+				if (length < 0)
+					break;
+				return length;
+			}
+		}
+		throw new HuffException("Bad message length.");
+	}
+
+	// the decoded length of message[offset, offset + length), checked against
+	// the bits that follow the header: every code is at least 1 bit, so a
+	// longer length than that can only come from a cut-short message
+	private int checkedLength(byte[] message, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > message.length)
+			throw new IllegalArgumentException("Message is out of range.");
+		int size = decodedLength(message, offset);
+		if (size > 8L * (length - headerLength(size)))
+			throw new HuffException("Message is truncated.");
+		return size;
+	}
+
+	/**
+	 * Returns the decoding of message[offset, offset + length).
+	 *
+	 * @throws a HuffException if the message belongs to another model or is
+	 *             cut short
+	 */
+	public byte[] decode(byte[] message, int offset, int length) {
+		byte[] out = new byte[checkedLength(message, offset, length)];
+		decode(message, offset, length, out, 0);
+		return out;
+	}
+
+	public byte[] decode(byte[] message) {
+		return decode(message, 0, message.length);
+	}
+
+	/**
+	 * Decodes message[offset, offset + length) into out from outOffset on,
+	 * and returns the number of bytes written, which is
+	 * decodedLength(message, offset).
+	 *
+	 * @throws a HuffException if the message belongs to another model or is
+	 *             cut short
+	 * @throws an IllegalArgumentException if out has no room for the decoded
+	 *             message
+	 */
+	public int decode(byte[] message, int offset, int length, byte[] out, int outOffset) {
+		int size = checkedLength(message, offset, length);
+		if (size > out.length - outOffset)
+			throw new IllegalArgumentException("Output is too small.");
+		int i = offset + headerLength(size);
+		int end = offset + length;
+
+		// the low count bits of buffer are the next bits of the message;
+		// past its end, missing counts the 0 bits used in their place
+		long buffer = 0;
+		int count = 0;
+		int missing = 0;
+		for (int o = outOffset; o < outOffset + size; o++) {
+			while (count < myMaxLength) {
+				buffer <<= 8;
+				if (i < end)
+					buffer |= message[i++] & 0xff;
+				else
+					missing += 8;
+				count += 8;
+			}
+			int entry = myTable[(int) (buffer >>> (count - myMaxLength)) & ((1 << myMaxLength) - 1)];
+			if (entry == -1)
+				throw new HuffException("Bad message.");
+			count -= entry & 15;
+			if (missing > count)
+				throw new HuffException("Message is truncated.");
+			out[o] = (byte) (entry >>> 4);
+		}
+		return size;
+	}
+}
@@ -1,7 +1,7 @@
+import java.nio.ByteBuffer;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
 
 //1. count characters in file
 //2. create Huffman tree
@@ -18,9 +18,102 @@ public class HuffProcessor implements Processor {
 	public static final int PSEUDO_EOF = ALPH_SIZE;
 	public static final int HUFF_NUMBER = 0xface8200;
 	
+	/**
+	 * Magic number of the streaming format written when a block size is set.
+	 * The input is cut into blocks of at most blockSize bytes, and each block
+	 * is written as a 1 bit, its own tree header and its body ending in
+	 * PSEUDO_EOF; a 0 bit follows the last block.
+	 */
+	public static final int HUFF_BLOCK_NUMBER = 0xface8201;
+	
+	/**
+	 * Magic numbers of the canonical formats, which store a code length per
+	 * symbol instead of the tree (see writeCanonicalHeader), and otherwise
+	 * match HUFF_NUMBER and HUFF_BLOCK_NUMBER.
+	 */
+	public static final int HUFF_CANONICAL_NUMBER = 0xface8202;
+	public static final int HUFF_CANONICAL_BLOCK_NUMBER = 0xface8203;
+	
+	/**
+	 * Magic number of the parallel container written by
+	 * ParallelHuffProcessor.
+	 */
+	public static final int HUFF_PARALLEL_NUMBER = 0xface8204;
+	
+	/**
+	 * Magic number of the adaptive format written by AdaptiveHuffProcessor.
+	 */
+	public static final int HUFF_ADAPTIVE_NUMBER = 0xface8205;
+	
+	/**
+	 * Magic number of a HuffModel written with HuffModel.write.
+	 */
+	public static final int HUFF_MODEL_NUMBER = 0xface8206;
+	
+	/**
+	 * Longest code the canonical formats produce, from 9 (enough for 257
+	 * symbols) to 63. Longer codes are avoided by halving the counts until the
+	 * tree is shallow enough.
+	 */
+	public static int MAX_CODE_LENGTH = 32;
+	
+	// longest code length a canonical header can hold, and the bits of the
+	// field giving how many bits each length takes
+	private static final int LENGTH_BITS = 6;
+	private static final int WIDTH_BITS = 3;
+	
+	/**
+	 * Returns the most bytes a canonical stream of size bytes can take, as
+	 * written by new HuffProcessor(size, true): the magic number, the block
+	 * flags, a header of at most ALPH_SIZE lengths, and a code of at most
+	 * (1 << LENGTH_BITS) - 1 bits for every byte and PSEUDO_EOF.
+	 */
+	static long maxCanonicalLength(long size) {
+		long header = WIDTH_BITS + LENGTH_BITS + 1 + (long) ALPH_SIZE * LENGTH_BITS;
+		long body = (size + 1) * ((1 << LENGTH_BITS) - 1);
+		return BITS_PER_INT / BITS_PER_WORD + (2 + header + body + 7) / 8;
+	}
+	
 	private int[] frequency;
 	private PriorityQueue<HuffNode> pq;
-	private Map<Integer, String> myMap;
+	
+	// code and code length of every symbol, PSEUDO_EOF included
+	private long[] myCodes;
+	private int[] myLengths;
+	
+	/**
+	 * Bytes per block in the streaming format, or 0 to compress the whole
+	 * input under a single header.
+	 */
+	private final int myBlockSize;
+	
+	// whether to write canonical headers
+	private final boolean myCanonical;
+	
+	public HuffProcessor() {
+		this(0, false);
+	}
+	
+	public HuffProcessor(int blockSize) {
+		this(blockSize, false);
+	}
+	
+	/**
+	 * Creates a processor that compresses in the streaming format, reading
+	 * the input only once and holding at most blockSize bytes of it at a
+	 * time, so it works on pipes and inputs of any size. A blockSize of 0
+	 * uses the original single-header format. If canonical is true, the
+	 * headers hold canonical code lengths, limited to MAX_CODE_LENGTH bits,
+	 * instead of the tree. Every format decompresses with any processor.
+	 * 
+	 * @throws an IllegalArgumentException if blockSize is negative
+	 */
+	public HuffProcessor(int blockSize, boolean canonical) {
+		if (blockSize < 0)
+			throw new IllegalArgumentException("Block size is negative.");
+		myBlockSize = blockSize;
+		myCanonical = canonical;
+	}
 
 	// count characters in a file
 	public void countBits (BitInputStream in) {
@@ -53,15 +146,25 @@ public class HuffProcessor implements Processor {
 		}
 	}
 	
-	// get codes
-	public void extractCodes(HuffNode current, String path) {
+	// get codes: current is reached by the low length bits of code
+	public void extractCodes(HuffNode current, long code, int length) {
 		if (current.value() != -1) {
-			myMap.put(current.value(), path);
+			if (length > 64)
+				throw new HuffException("Code longer than 64 bits.");
+			myCodes[current.value()] = code;
+			myLengths[current.value()] = length;
 			return;
 		}
 		
-		extractCodes(current.left(), path + 0);
-		extractCodes(current.right(), path + 1);
+		extractCodes(current.left(), code << 1, length + 1);
+		extractCodes(current.right(), code << 1 | 1, length + 1);
+	}
+	
+	// fill the code tables from the tree at root
+	private void extractCodes(HuffNode root) {
+		myCodes = new long[ALPH_SIZE + 1];
+		myLengths = new int[ALPH_SIZE + 1];
+		extractCodes(root, 0, 0);
 	}
 	
 	// write header
@@ -77,37 +180,227 @@ public class HuffProcessor implements Processor {
 		writeHeader(current.right(), out);
 	}
 	
+	// create the tree for frequency, fill the code tables and write the
+	// header in the chosen format
+	private void writeCodes(BitOutputStream out) {
+		pq = new PriorityQueue<HuffNode>();
+		createTree();
+		HuffNode root = pq.poll();
+		if (!myCanonical) {
+			extractCodes(root);
+			writeHeader(root, out);
+			return;
+		}
+		
+		// halve the counts, keeping every used symbol, until no code is
+		// longer than the limit
+		int limit = Math.min(Math.max(MAX_CODE_LENGTH, 9), (1 << LENGTH_BITS) - 1);
+		while (depth(root) > limit) {
+			for (int i = 0; i < ALPH_SIZE; i++) {
+				frequency[i] = (frequency[i] + 1) / 2;
+			}
+			pq = new PriorityQueue<HuffNode>();
+			createTree();
+			root = pq.poll();
+		}
+		extractCodes(root);
+		canonicalCodes(myLengths, myCodes);
+		writeCanonicalHeader(myLengths, out);
+	}
+	
+	private static int depth(HuffNode node) {
+		if (node.value() != -1)
+			return 0;
+		return 1 + Math.max(depth(node.left()), depth(node.right()));
+	}
+	
+	// assign codes in order of length, then symbol: each code is the previous
+	// one plus 1, shifted left to the new length, so the lengths alone
+	// determine every code
+	static void canonicalCodes(int[] lengths, long[] codes) {
+		int[] order = canonicalOrder(lengths);
+		long code = 0;
+		int previous = 0;
+		for (int symbol : order) {
+			code <<= lengths[symbol] - previous;
+			codes[symbol] = code++;
+			previous = lengths[symbol];
+		}
+	}
+	
+	// the symbols with a code, sorted by length and then by symbol
+	private static int[] canonicalOrder(int[] lengths) {
+		int count = 0;
+		int max = 0;
+		for (int symbol = 0; symbol <= PSEUDO_EOF; symbol++) {
+			if (lengths[symbol] > 0 || symbol == PSEUDO_EOF)
+				count++;
+			max = Math.max(max, lengths[symbol]);
+		}
+		int[] order = new int[count];
+		int i = 0;
+		for (int length = 0; length <= max; length++) {
+			for (int symbol = 0; symbol <= PSEUDO_EOF; symbol++) {
+				if (lengths[symbol] == length && (length > 0 || symbol == PSEUDO_EOF))
+					order[i++] = symbol;
+			}
+		}
+		return order;
+	}
+	
+	// write the canonical header: how many bits each length takes, the
+	// length of the PSEUDO_EOF code, then the byte lengths either as a list
+	// of (gap to the previous symbol in Elias gamma code, length) pairs or,
+	// if shorter, as one length per byte value, with a bit telling which
+	static void writeCanonicalHeader(int[] lengths, BitOutputStream out) {
+		int width = 1;
+		for (int length : lengths) {
+			width = Math.max(width, 32 - Integer.numberOfLeadingZeros(length));
+		}
+		
+		int count = 0;
+		int sparse = 0;
+		int previous = -1;
+		for (int symbol = 0; symbol < ALPH_SIZE; symbol++) {
+			if (lengths[symbol] > 0) {
+				count++;
+				sparse += gammaLength(symbol - previous) + width;
+				previous = symbol;
+			}
+		}
+		
+		out.writeBits(WIDTH_BITS, width);
+		out.writeBits(width, lengths[PSEUDO_EOF]);
+		if (BITS_PER_WORD + 1 + sparse <= ALPH_SIZE * width) {
+			out.writeBits(1, 0);
+			out.writeBits(BITS_PER_WORD + 1, count);
+			previous = -1;
+			for (int symbol = 0; symbol < ALPH_SIZE; symbol++) {
+				if (lengths[symbol] > 0) {
+					writeGamma(symbol - previous, out);
+					out.writeBits(width, lengths[symbol]);
+					previous = symbol;
+				}
+			}
+		}
+		else {
+			out.writeBits(1, 1);
+			for (int symbol = 0; symbol < ALPH_SIZE; symbol++) {
+				out.writeBits(width, lengths[symbol]);
+			}
+		}
+	}
+	
+	private static int gammaLength(int x) {
+		return 2 * (31 - Integer.numberOfLeadingZeros(x)) + 1;
+	}
+	
+	// x >= 1 as floor(log2 x) zeros followed by x in binary
+	private static void writeGamma(int x, BitOutputStream out) {
+		int bits = 32 - Integer.numberOfLeadingZeros(x);
+		out.writeBits(bits - 1, 0);
+		out.writeBits(bits, x);
+	}
+	
 	@Override
 	public void compress(BitInputStream in, BitOutputStream out) {
+		// a mapped input is scanned in place, once to count and once to
+		// encode, instead of being read twice through readBits
+		if (in instanceof MappedBitInputStream) {
+			MappedBitInputStream mapped = (MappedBitInputStream) in;
+			ByteBuffer bytes = mapped.remainingBytes();
+			if (bytes != null) {
+				compress(bytes, out);
+				mapped.position(mapped.position() + 8L * bytes.limit());
+				return;
+			}
+		}
+		
+		if (myBlockSize > 0) {
+			compressBlocks(in, out);
+			return;
+		}
+		
 		// count characters
 		frequency = new int[ALPH_SIZE];
 		countBits(in);
 		
-		// create tree
-		pq = new PriorityQueue<HuffNode>();
-		createTree();
-		
-		// get codes
-		myMap = new HashMap<Integer, String>();
-		HuffNode root = pq.poll();
-		extractCodes(root, "");
-		
-		// System.out.println(myMap.size()-1);
-		
-		// write header
-		out.writeBits(BITS_PER_INT, HUFF_NUMBER);
-		writeHeader(root, out);
+		// create tree, get codes and write header
+		out.writeBits(BITS_PER_INT, myCanonical ? HUFF_CANONICAL_NUMBER : HUFF_NUMBER);
+		writeCodes(out);
 		
 		// compress
+		HuffBitWriter body = new HuffBitWriter(out);
 		int current = in.readBits(BITS_PER_WORD);
 		while (current != -1) {
-			String code = myMap.get(current);
-			out.writeBits(code.length(), Integer.parseInt(code, 2));
+			body.writeBits(myLengths[current], myCodes[current]);
 			current = in.readBits(BITS_PER_WORD);
 		}
 		
 		// write pseudo-EOF
-		out.writeBits(myMap.get(PSEUDO_EOF).length(), Integer.parseInt(myMap.get(PSEUDO_EOF), 2));
+		body.writeBits(myLengths[PSEUDO_EOF], myCodes[PSEUDO_EOF]);
+		body.flush();
+	}
+	
+	// compress in the streaming format, one block at a time
+	private void compressBlocks(BitInputStream in, BitOutputStream out) {
+		out.writeBits(BITS_PER_INT, myCanonical ? HUFF_CANONICAL_BLOCK_NUMBER : HUFF_BLOCK_NUMBER);
+		
+		byte[] block = new byte[myBlockSize];
+		int size = 0;
+		int current = in.readBits(BITS_PER_WORD);
+		while (current != -1) {
+			block[size++] = (byte) current;
+			if (size == myBlockSize) {
+				compressBlock(block, size, out);
+				size = 0;
+			}
+			current = in.readBits(BITS_PER_WORD);
+		}
+		if (size > 0)
+			compressBlock(block, size, out);
+		
+		// no more blocks
+		out.writeBits(1, 0);
+	}
+	
+	// write one block with its own header
+	private void compressBlock(byte[] block, int size, BitOutputStream out) {
+		out.writeBits(1, 1);
+		writeBlock(ByteBuffer.wrap(block), 0, size, out);
+	}
+	
+	// compress all of bytes, in whichever format this processor writes
+	private void compress(ByteBuffer bytes, BitOutputStream out) {
+		if (myBlockSize == 0) {
+			out.writeBits(BITS_PER_INT, myCanonical ? HUFF_CANONICAL_NUMBER : HUFF_NUMBER);
+			writeBlock(bytes, 0, bytes.limit(), out);
+			return;
+		}
+		
+		out.writeBits(BITS_PER_INT, myCanonical ? HUFF_CANONICAL_BLOCK_NUMBER : HUFF_BLOCK_NUMBER);
+		for (int start = 0; start < bytes.limit(); start += myBlockSize) {
+			out.writeBits(1, 1);
+			writeBlock(bytes, start, Math.min(bytes.limit(), start + myBlockSize), out);
+		}
+		out.writeBits(1, 0);
+	}
+	
+	// write the header and body of bytes[start, end)
+	private void writeBlock(ByteBuffer bytes, int start, int end, BitOutputStream out) {
+		frequency = new int[ALPH_SIZE];
+		for (int i = start; i < end; i++) {
+			frequency[bytes.get(i) & 0xff]++;
+		}
+		
+		writeCodes(out);
+		HuffBitWriter body = new HuffBitWriter(out);
+		for (int i = start; i < end; i++) {
+			int current = bytes.get(i) & 0xff;
+			body.writeBits(myLengths[current], myCodes[current]);
+		}
+		body.writeBits(myLengths[PSEUDO_EOF], myCodes[PSEUDO_EOF]);
+		body.flush();
 	}
 	
 	
@@ -126,33 +419,154 @@ public class HuffProcessor implements Processor {
 	
 	@Override
 	public void decompress(BitInputStream in, BitOutputStream out) {
-		// check for HUFF_NUMBER
-		if (in.readBits(BITS_PER_INT) != HUFF_NUMBER) {
+		// everything is read through one buffered reader, so the decoder can
+		// look ahead at the bits of the next code
+		HuffBitReader bits = new HuffBitReader(in);
+		
+		decompress(bits.readBits(BITS_PER_INT), bits, out);
+	}
+	
+	// decompress whatever format magic, already read from in, starts
+	void decompress(int magic, HuffBitReader bits, BitOutputStream out) {
+		if (magic == HUFF_PARALLEL_NUMBER) {
+			ParallelHuffProcessor.decompressChunks(bits, out, ForkJoinPool.commonPool());
+			return;
+		}
+		if (magic == HUFF_ADAPTIVE_NUMBER) {
+			AdaptiveHuffProcessor.decompressAdaptive(bits, out);
+			return;
+		}
+		if (magic == HUFF_BLOCK_NUMBER || magic == HUFF_CANONICAL_BLOCK_NUMBER) {
+			decompressBlocks(bits, out, magic == HUFF_CANONICAL_BLOCK_NUMBER);
+			return;
+		}
+		if (magic != HUFF_NUMBER && magic != HUFF_CANONICAL_NUMBER) {
 			throw new HuffException("HuffNumber not there.");
 		}
 		
 		// recreate tree from header
-		HuffNode root = readHeader(in);
+		HuffNode root = magic == HUFF_CANONICAL_NUMBER ? readCanonicalHeader(bits) : readHeader(bits);
+		decodeBody(root, bits, out);
+	}
+	
+	// read a canonical header and build the tree its codes describe
+	private HuffNode readCanonicalHeader(HuffBitReader in) {
+		return canonicalTree(readCanonicalLengths(in));
+	}
+	
+	// read the code lengths of a canonical header
+	static int[] readCanonicalLengths(HuffBitReader in) {
+		int[] lengths = new int[ALPH_SIZE + 1];
+		int width = in.readBits(WIDTH_BITS);
+		if (width == -1)
+			throw new HuffException("Header is truncated.");
+		lengths[PSEUDO_EOF] = in.readBits(width);
+		int dense = in.readBits(1);
+		if (dense == 0) {
+			int count = in.readBits(BITS_PER_WORD + 1);
+			int symbol = -1;
+			for (int i = 0; i < count; i++) {
+				symbol += readGamma(in);
+				if (symbol >= ALPH_SIZE)
+					throw new HuffException("Bad header.");
+				lengths[symbol] = in.readBits(width);
+			}
+		}
+		else {
+			for (int symbol = 0; symbol < ALPH_SIZE; symbol++) {
+				lengths[symbol] = in.readBits(width);
+			}
+		}
+		for (int length : lengths) {
+			if (length == -1)
+				throw new HuffException("Header is truncated.");
+		}
+		return lengths;
+	}
+	
+	// the tree of the canonical code with the given lengths
+	static HuffNode canonicalTree(int[] lengths) {
+		long[] codes = new long[ALPH_SIZE + 1];
+		canonicalCodes(lengths, codes);
+		int[] order = canonicalOrder(lengths);
+		return canonicalTree(order, lengths, codes, 0, order.length, 0);
+	}
+	
+	// the subtree for the codes order[lo..hi), which share their first depth
+	// bits; in canonical order those codes are also sorted
+	private static HuffNode canonicalTree(int[] order, int[] lengths, long[] codes, int lo, int hi, int depth) {
+		if (hi - lo == 1 && lengths[order[lo]] == depth)
+			return new HuffNode(order[lo], 0, null, null);
+		if (hi - lo < 2 || depth >= 64)
+			throw new HuffException("Bad header.");
 		
-		// decode body
-		HuffNode current = root;
+		// split on the next bit
+		int mid = lo;
+		while (mid < hi && lengths[order[mid]] > depth
+				&& (codes[order[mid]] >>> (lengths[order[mid]] - depth - 1) & 1) == 0)
+			mid++;
+		for (int i = lo; i < hi; i++) {
+			if (lengths[order[i]] <= depth)
+				throw new HuffException("Bad header.");
+		}
+		HuffNode left = canonicalTree(order, lengths, codes, lo, mid, depth + 1);
+		HuffNode right = canonicalTree(order, lengths, codes, mid, hi, depth + 1);
+		return new HuffNode(-1, 0, left, right);
+	}
+	
+	private static int readGamma(HuffBitReader in) {
+		int zeros = 0;
 		int bit = in.readBits(1);
-		while (bit != -1) {
-			if (bit == 1) 
-				current = current.right();
-			else
-				current = current.left();
-			
-			if (current.value() != -1) {
-				if (current.value() == PSEUDO_EOF)
-					return;
-				else
-					out.writeBits(8, current.value());
-					current = root;
-			}
-			
+		while (bit == 0 && zeros < 31) {
+			zeros++;
 			bit = in.readBits(1);
 		}
+		if (bit != 1)
+			throw new HuffException("Bad header.");
+		int rest = in.readBits(zeros);
+		if (rest == -1)
+			throw new HuffException("Header is truncated.");
+		return (1 << zeros) | rest;
+	}
+	
+	// same as readHeader(BitInputStream), through a HuffBitReader
+	private HuffNode readHeader(HuffBitReader in) {
+		int bit = in.readBits(1);
+		if (bit == 0) {
+			HuffNode left = readHeader(in);
+			HuffNode right = readHeader(in);
+			return new HuffNode(-1, 0, left, right);
+		}
+		else if (bit == 1) {
+			int value = in.readBits(9);
+			if (value != -1)
+				return new HuffNode(value, 0, null, null);
+		}
+		throw new HuffException("Header is truncated.");
+	}
+	
+	// decompress the streaming format
+	private void decompressBlocks(HuffBitReader in, BitOutputStream out, boolean canonical) {
+		int more = in.readBits(1);
+		while (more == 1) {
+			decodeBody(canonical ? readCanonicalHeader(in) : readHeader(in), in, out);
+			more = in.readBits(1);
+		}
+		if (more == -1)
+			throw new HuffException("Missing end of blocks.");
+	}
+	
+	// decode codes with the tree at root until PSEUDO_EOF, a table lookup
+	// per code instead of a tree step per bit
+	private void decodeBody(HuffNode root, HuffBitReader in, BitOutputStream out) {
+		HuffDecoder decoder = new HuffDecoder(root);
+		int symbol = decoder.decode(in);
+		while (symbol != -1) {
+			if (symbol == PSEUDO_EOF)
+				return;
+			out.writeBits(BITS_PER_WORD, symbol);
+			symbol = decoder.decode(in);
+		}
 		
 		throw new HuffException("Problem with Pseudo-EOF.");
 	}
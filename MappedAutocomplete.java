@@ -0,0 +1,325 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Autocompletor over a sorted term index stored in a binary file and mapped
+ * into memory with FileChannel.map. Opening an index only checks that the
+ * word offsets are in order, with no parsing or sorting, so startup takes
+ * milliseconds, and every JVM that maps the same file shares its pages
+ * through the operating system's page cache.
+ *
+ * The file holds, all big-endian:
+ *
+ * int INDEX_NUMBER, int n,
+ * int[n+1] offsets of each word into the word bytes,
+ * double[n] weights,
+ * the UTF-8 bytes of all n words, back to back.
+ *
+ * Words are sorted by their UTF-8 bytes, so all words starting with a given
+ * prefix are contiguous and binary search runs directly over the mapped
+ * bytes. A single mapping limits an index to 2GB.
+ *
+ */
+public class MappedAutocomplete implements Autocompletor {
+
+	public static final int INDEX_NUMBER = 0xface8a00;
+
+	private final ByteBuffer myBuffer;
+	private final int mySize;
+	private final int myOffsetsStart;
+	private final int myWeightsStart;
+	private final int myWordsStart;
+
+	private MappedAutocomplete(ByteBuffer buffer) throws IOException {
+		myBuffer = buffer;
+		if (buffer.limit() < 8 || buffer.getInt(0) != INDEX_NUMBER)
+			throw new IOException("Not an autocomplete index.");
+		mySize = buffer.getInt(4);
+		if (mySize < 0)
+			throw new IOException("Autocomplete index is corrupt.");
+
+		// in long, so that a corrupt size cannot wrap around
+		long weightsStart = 8 + 4L * (mySize + 1);
+		long wordsStart = weightsStart + 8L * mySize;
+		if (wordsStart > buffer.limit())
+			throw new IOException("Autocomplete index is truncated.");
+		myOffsetsStart = 8;
+		myWeightsStart = (int) weightsStart;
+		myWordsStart = (int) wordsStart;
+
+		// every word must lie within the word bytes
+		int previous = 0;
+		for (int i = 0; i <= mySize; i++) {
+			int offset = offset(i);
+			if (offset < previous)
+				throw new IOException("Autocomplete index is corrupt.");
+			previous = offset;
+		}
+		if (wordsStart + previous > buffer.limit())
+			throw new IOException("Autocomplete index is truncated.");
+	}
+
+	/**
+	 * Maps the index stored in file. The file can be shared by any number of
+	 * readers and must not be modified while mapped.
+	 *
+	 * @param file - An index written by write
+	 * @throws IOException if the file cannot be read or is not an index
+	 */
+	public static MappedAutocomplete open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// the mapping stays valid after the channel is closed
+			return new MappedAutocomplete(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the terms of auto to file in the index format.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(BinarySearchAutocomplete auto, File file) throws IOException {
+		write(auto.terms(), file);
+	}
+
+	/**
+	 * Writes terms to file in the index format. Terms need not be sorted;
+	 * words that appear more than once keep their last weight.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Term[] terms, File file) throws IOException {
+		final byte[][] words = new byte[terms.length][];
+		Integer[] order = new Integer[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			words[i] = terms[i].getWord().getBytes(StandardCharsets.UTF_8);
+			order[i] = i;
+		}
+
+		// stable, so the last of several equal words is the last one here
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return compareBytes(words[a], words[b]);
+			}
+		});
+		int n = 0;
+		for (int i = 0; i < order.length; i++) {
+			if (i + 1 < order.length && compareBytes(words[order[i]], words[order[i + 1]]) == 0)
+				continue;
+			order[n++] = order[i];
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(INDEX_NUMBER);
+			out.writeInt(n);
+			int offset = 0;
+			out.writeInt(offset);
+			for (int i = 0; i < n; i++) {
+				offset += words[order[i]].length;
+				out.writeInt(offset);
+			}
+			for (int i = 0; i < n; i++) {
+				out.writeDouble(terms[order[i]].getWeight());
+			}
+			for (int i = 0; i < n; i++) {
+				out.write(words[order[i]]);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c1 = a[i] & 0xff;
+			int c2 = b[i] & 0xff;
+			if (c1 != c2)
+				return c1 - c2;
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Returns the number of words in the index.
+	 */
+	public int size() {
+		return mySize;
+	}
+
+	private int offset(int i) {
+		return myBuffer.getInt(myOffsetsStart + 4 * i);
+	}
+
+	double weight(int i) {
+		return myBuffer.getDouble(myWeightsStart + 8 * i);
+	}
+
+	String word(int i) {
+		int start = offset(i);
+		byte[] bytes = new byte[offset(i + 1) - start];
+		for (int j = 0; j < bytes.length; j++) {
+			bytes[j] = myBuffer.get(myWordsStart + start + j);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares word i, cut to the length of prefix, with prefix, reading the
+	 * word straight out of the mapped buffer.
+	 */
+	private int comparePrefix(int i, byte[] prefix) {
+		int start = myWordsStart + offset(i);
+		int length = Math.min(offset(i + 1) - offset(i), prefix.length);
+		for (int j = 0; j < length; j++) {
+			int c1 = myBuffer.get(start + j) & 0xff;
+			int c2 = prefix[j] & 0xff;
+			if (c1 != c2)
+				return c1 - c2;
+		}
+		return length - prefix.length;
+	}
+
+	private int firstIndexOf(byte[] prefix) {
+		int low = -1;
+		int high = mySize;
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (comparePrefix(mid, prefix) < 0)
+				low = mid;
+			else
+				high = mid;
+		}
+		if (high < mySize && comparePrefix(high, prefix) == 0)
+			return high;
+		return -1;
+	}
+
+	private int lastIndexOf(byte[] prefix) {
+		int low = -1;
+		int high = mySize;
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (comparePrefix(mid, prefix) <= 0)
+				low = mid;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Required by the Autocompletor interface. Returns the k words with the
+	 * largest weight that start with prefix, in descending weight order, or
+	 * all of them if there are fewer than k.
+	 *
+	 * @param prefix - A prefix which all returned words must start with
+	 * @param k - The (maximum) number of words to be returned
+	 * @throws a NullPointerException if prefix is null
+	 */
+	@Override
+	public String[] topKMatches(String prefix, int k) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null.");
+		if (k <= 0)
+			return new String[0];
+
+		byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+		int first = firstIndexOf(key);
+		if (first == -1)
+			return new String[0];
+		int last = lastIndexOf(key);
+
+		// keep the k heaviest words of the range in a min-heap of indices
+		int c = Math.min(k, last - first + 1);
+		int[] heap = new int[c];
+		int size = 0;
+		for (int i = first; i <= last; i++) {
+			if (size < c) {
+				heap[size] = i;
+				siftUp(heap, size++);
+			}
+			else if (weight(i) > weight(heap[0])) {
+				heap[0] = i;
+				siftDown(heap, size, 0);
+			}
+		}
+
+		String[] ret = new String[size];
+		for (int i = size - 1; i >= 0; i--) {
+			ret[i] = word(heap[0]);
+			heap[0] = heap[i];
+			siftDown(heap, i, 0);
+		}
+		return ret;
+	}
+
+	private void siftUp(int[] heap, int i) {
+		int item = heap[i];
+		double w = weight(item);
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (weight(heap[parent]) <= w)
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = item;
+	}
+
+	private void siftDown(int[] heap, int size, int i) {
+		int item = heap[i];
+		double w = weight(item);
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && weight(heap[child + 1]) < weight(heap[child]))
+				child++;
+			if (weight(heap[child]) >= w)
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = item;
+	}
+
+	/**
+	 * Given a prefix, returns the largest-weight word starting with that
+	 * prefix, or an empty string if none exists.
+	 *
+	 * @throws a NullPointerException if the prefix is null
+	 */
+	@Override
+	public String topMatch(String prefix) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null");
+
+		byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+		int first = firstIndexOf(key);
+		if (first == -1)
+			return "";
+		int last = lastIndexOf(key);
+
+		int max = first;
+		for (int i = first + 1; i <= last; i++) {
+			if (weight(i) > weight(max))
+				max = i;
+		}
+		return word(max);
+	}
+}
@@ -0,0 +1,190 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A BitInputStream over a memory-mapped file or any ByteBuffer. Bits are
+ * loaded from the buffer 32 at a time into a 64-bit cache rather than a
+ * byte per call, reset and position move anywhere in the input without
+ * reopening it, and remainingBytes exposes the unread input in place so that
+ * a Processor can scan it directly, as HuffProcessor.compress does instead of
+ * reading it twice through readBits.
+ *
+ * Files are mapped read-only in one piece, so they may be at most
+ * Integer.MAX_VALUE bytes long.
+ *
+ */
+public class MappedBitInputStream extends BitInputStream {
+	private final ByteBuffer myBytes;
+
+	/**
+	 * The next myCount bits of input are the low myCount bits of myCache,
+	 * most significant first, followed by the bytes of myBytes from its
+	 * position on.
+	 */
+	private long myCache;
+	private int myCount;
+
+	public MappedBitInputStream(String filename) {
+		this(new File(filename));
+	}
+
+	public MappedBitInputStream(File file) {
+		this(map(file));
+	}
+
+	/**
+	 * Reads the bytes of bytes from its position to its limit, without
+	 * copying them. Changes to the buffer's position or limit afterwards do
+	 * not affect the stream.
+	 */
+	public MappedBitInputStream(ByteBuffer bytes) {
+		super(new ByteArrayInputStream(new byte[0]));
+		myBytes = bytes.slice();
+	}
+
+	private static ByteBuffer map(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("File is too large to map.");
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of bits left to read.
+	 */
+	public long bitsRemaining() {
+		return 8L * myBytes.remaining() + myCount;
+	}
+
+	/**
+	 * Returns the number of bits read so far.
+	 */
+	public long position() {
+		return 8L * myBytes.position() - myCount;
+	}
+
+	/**
+	 * Moves to bit number bit of the input, so that the next read starts
+	 * there.
+	 *
+	 * @throws an IllegalArgumentException if bit is before the start or past
+	 *             the end of the input
+	 */
+	public void position(long bit) {
+		if (bit < 0 || bit > 8L * myBytes.limit())
+			throw new IllegalArgumentException("Position is out of range.");
+		myBytes.position((int) (bit >>> 3));
+		myCount = 0;
+		readBits((int) (bit & 7));
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * Moves back to the start of the input.
+	 */
+	@Override
+	public void reset() {
+		position(0);
+	}
+
+	@Override
+	public int readBits(int howManyBits) {
+		if (howManyBits > myCount) {
+			if (bitsRemaining() < howManyBits) {
+				myBytes.position(myBytes.limit());
+				myCount = 0;
+				return -1;
+			}
+			if (myBytes.remaining() >= 4) {
+				myCache = (myCache << 32) | (myBytes.getInt() & 0xffffffffL);
+				myCount += 32;
+			}
+			else {
+				while (myCount < howManyBits) {
+					myCache = (myCache << 8) | (myBytes.get() & 0xff);
+					myCount += 8;
+				}
+			}
+		}
+		myCount -= howManyBits;
+		return (int) ((myCache >>> myCount) & ((1L << howManyBits) - 1));
+	}
+
+	/**
+	 * Reads the next n bits, 0 <= n <= 64.
+	 *
+	 * @throws an IllegalStateException if fewer than n bits are left
+	 */
+	public long readLong(int n) {
+		if (bitsRemaining() < n)
+			throw new IllegalStateException("Fewer than " + n + " bits are left.");
+		if (n <= 32)
+			return readBits(n) & 0xffffffffL;
+		long high = readBits(n - 32) & 0xffffffffL;
+		return (high << 32) | (readBits(32) & 0xffffffffL);
+	}
+
+	@Override
+	public int read() {
+		return readBits(8);
+	}
+
+	/**
+	 * Reads up to len bytes into b, copying them from the buffer in bulk
+	 * when the stream is at a byte boundary.
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (bitsRemaining() < 8)
+			return -1;
+		int n = 0;
+		if (myCount % 8 == 0) {
+			while (myCount > 0 && n < len) {
+				b[off + n++] = (byte) readBits(8);
+			}
+			int bulk = Math.min(len - n, myBytes.remaining());
+			myBytes.get(b, off + n, bulk);
+			return n + bulk;
+		}
+		while (n < len && bitsRemaining() >= 8) {
+			b[off + n++] = (byte) readBits(8);
+		}
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(bitsRemaining() / 8, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the unread input as a read-only buffer sharing its memory with
+	 * this stream, from position 0 to its limit, or null if the stream is not
+	 * at a byte boundary. Reading the returned buffer does not move the
+	 * stream.
+	 */
+	public ByteBuffer remainingBytes() {
+		if (myCount % 8 != 0)
+			return null;
+		ByteBuffer bytes = myBytes.duplicate();
+		bytes.position(myBytes.position() - myCount / 8);
+		return bytes.slice().asReadOnlyBuffer();
+	}
+
+	@Override
+	public void close() {
+	}
+}
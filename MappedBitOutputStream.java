@@ -0,0 +1,171 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A BitOutputStream that collects bits in a 64-bit accumulator and stores
+ * them 32 at a time into a ByteBuffer instead of writing a byte per call.
+ * Writing to a file goes through a direct buffer of BUFFER_SIZE bytes that
+ * is handed to the file's channel whenever it fills up, so the output is
+ * never copied through the heap. Writing to a given buffer, such as a file
+ * region mapped by the caller, stores the bits straight into it.
+ *
+ * Like BitOutputStream, flush pads the output to a whole byte with 0 bits.
+ *
+ */
+public class MappedBitOutputStream extends BitOutputStream {
+	public static int BUFFER_SIZE = 1 << 20;
+
+	// channel the buffer is drained to, or null when writing to a given buffer
+	private final FileChannel myChannel;
+	private final ByteBuffer myBytes;
+
+	/**
+	 * The low myCount bits of myCache, most significant first, have not
+	 * been stored yet. myCount is always below 32 between calls.
+	 */
+	private long myCache;
+	private int myCount;
+
+	public MappedBitOutputStream(String filename) {
+		this(new File(filename));
+	}
+
+	/**
+	 * Creates a stream that writes to file, replacing its contents.
+	 */
+	public MappedBitOutputStream(File file) {
+		this(open(file), ByteBuffer.allocateDirect(BUFFER_SIZE));
+	}
+
+	/**
+	 * Creates a stream that stores its bits into bytes from its position on.
+	 * Writing past the buffer's limit throws a BufferOverflowException.
+	 */
+	public MappedBitOutputStream(ByteBuffer bytes) {
+		this(null, bytes);
+	}
+
+	private MappedBitOutputStream(FileChannel channel, ByteBuffer bytes) {
+		super(new ByteArrayOutputStream(0));
+		myChannel = channel;
+		myBytes = bytes;
+	}
+
+	private static FileChannel open(File file) {
+		try {
+			return FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void writeBits(int howManyBits, int value) {
+		myCache = (myCache << howManyBits) | (value & ((1L << howManyBits) - 1));
+		myCount += howManyBits;
+		if (myCount >= 32) {
+			myCount -= 32;
+			if (myChannel != null && myBytes.remaining() < 4)
+				drain();
+			myBytes.putInt((int) (myCache >>> myCount));
+		}
+	}
+
+	/**
+	 * Writes the low n bits of bits, 0 <= n <= 64.
+	 */
+	public void writeLong(int n, long bits) {
+		if (n > 32) {
+			writeBits(n - 32, (int) (bits >>> 32));
+			n = 32;
+		}
+		writeBits(n, (int) bits);
+	}
+
+	@Override
+	public void write(int b) {
+		writeBits(8, b);
+	}
+
+	/**
+	 * Writes len bytes of b, copying them to the buffer in bulk when the
+	 * stream is at a byte boundary.
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (myCount % 8 != 0) {
+			for (int i = off; i < off + len; i++) {
+				writeBits(8, b[i]);
+			}
+			return;
+		}
+		storeWholeBytes();
+		while (len > 0) {
+			if (myChannel != null && !myBytes.hasRemaining())
+				drain();
+			int bulk = myChannel == null ? len : Math.min(len, myBytes.remaining());
+			myBytes.put(b, off, bulk);
+			off += bulk;
+			len -= bulk;
+		}
+	}
+
+	// store the pending bits that make up whole bytes
+	private void storeWholeBytes() {
+		while (myCount >= 8) {
+			myCount -= 8;
+			store((byte) (myCache >>> myCount));
+		}
+	}
+
+	private void store(byte b) {
+		if (myChannel != null && !myBytes.hasRemaining())
+			drain();
+		myBytes.put(b);
+	}
+
+	// hand the buffered bytes to the channel
+	private void drain() {
+		myBytes.flip();
+		try {
+			while (myBytes.hasRemaining()) {
+				myChannel.write(myBytes);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		myBytes.clear();
+	}
+
+	/**
+	 * Stores the pending bits, padded with 0 bits to a whole byte, and
+	 * writes everything buffered to the file.
+	 */
+	@Override
+	public void flush() {
+		storeWholeBytes();
+		if (myCount > 0) {
+			store((byte) (myCache << (8 - myCount)));
+			myCount = 0;
+		}
+		if (myChannel != null)
+			drain();
+	}
+
+	@Override
+	public void close() {
+		flush();
+		if (myChannel == null)
+			return;
+		try {
+			myChannel.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
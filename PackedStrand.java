@@ -0,0 +1,405 @@
+import java.util.Arrays;
+
+/**
+ * A DNA strand packed 2 bits per base, 32 bases to a long: a, c, g and t
+ * are 0, 1, 2 and 3, and base i sits in bits 2 * (i % 32) of word i / 32.
+ * That is an eighth of the memory of a String. Any other character, such as
+ * N or another IUPAC ambiguity code, is an escape: it is kept in a sorted
+ * list of runs of one repeated character, so a long stretch of N costs one
+ * run, and its 2-bit slot is ignored.
+ *
+ * A strand codes lowercase or uppercase bases, whichever the first base
+ * appended to it is; bases in the other case are escapes.
+ *
+ * append, reverse, complement and toString work a word at a time where they
+ * can. Bits past the last base are always 0.
+ *
+ */
+public class PackedStrand implements IDnaStrand {
+	private static final String LOWER = "acgt";
+	private static final String UPPER = "ACGT";
+
+	// code of every character in each alphabet, -1 for escapes
+	private static final int[] LOWER_CODES = new int[128];
+	private static final int[] UPPER_CODES = new int[128];
+
+	// complement of every character, IUPAC ambiguity codes included
+	private static final char[] COMPLEMENT = new char[128];
+	static {
+		for (char c = 0; c < 128; c++) {
+			COMPLEMENT[c] = c;
+			LOWER_CODES[c] = LOWER.indexOf(c);
+			UPPER_CODES[c] = UPPER.indexOf(c);
+		}
+		String from = "acgtrykmbvdhACGTRYKMBVDH";
+		String to = "tgcayrmkvbhdTGCAYRMKVBHD";
+		for (int i = 0; i < from.length(); i++) {
+			COMPLEMENT[from.charAt(i)] = to.charAt(i);
+		}
+	}
+
+	private long[] myWords;
+	private long mySize;
+
+	// bases are coded in myAlphabet; null until the first base sets the case
+	private String myAlphabet;
+
+	// escape run i is myRunLengths[i] copies of myRunChars[i] from index
+	// myRunStarts[i]; runs are sorted and do not overlap
+	private long[] myRunStarts;
+	private int[] myRunLengths;
+	private char[] myRunChars;
+	private int myRuns;
+
+	private long myAppends;
+
+	/**
+	 * Create a strand representing an empty DNA strand, length of zero.
+	 */
+	public PackedStrand() {
+		this("");
+	}
+
+	/**
+	 * Create a strand representing s. No error checking is done to see if s
+	 * represents valid genomic/DNA data.
+	 *
+	 * @param s
+	 *            is the source of cgat data for this strand
+	 */
+	public PackedStrand(String s) {
+		initializeFrom(s);
+	}
+
+	/**
+	 * Initialize this strand so that it represents the value of source. No
+	 * error checking is performed.
+	 *
+	 * @param source
+	 *            is the source of this enzyme
+	 */
+	@Override
+	public void initializeFrom(String source) {
+		myWords = new long[words(source.length())];
+		mySize = 0;
+		myAlphabet = null;
+		myRunStarts = new long[4];
+		myRunLengths = new int[4];
+		myRunChars = new char[4];
+		myRuns = 0;
+		add(source);
+		myAppends = 0;
+	}
+
+	// number of words that hold size bases
+	private static int words(long size) {
+		long words = (size + 31) >>> 5;
+		if (words > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("Strand is too long.");
+		return (int) words;
+	}
+
+	private void ensureCapacity(long size) {
+		int needed = words(size);
+		if (needed > myWords.length)
+			myWords = Arrays.copyOf(myWords, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * myWords.length)));
+	}
+
+	// the code of c, or -1 if c is an escape
+	private int code(char c) {
+		if (c >= 128)
+			return -1;
+		if (myAlphabet == null) {
+			if (LOWER_CODES[c] >= 0)
+				myAlphabet = LOWER;
+			else if (UPPER_CODES[c] >= 0)
+				myAlphabet = UPPER;
+			else
+				return -1;
+		}
+		return myAlphabet == LOWER ? LOWER_CODES[c] : UPPER_CODES[c];
+	}
+
+	// append the characters of dna
+	private void add(String dna) {
+		ensureCapacity(mySize + dna.length());
+		for (int i = 0; i < dna.length(); i++) {
+			char c = dna.charAt(i);
+			int code = code(c);
+			if (code < 0)
+				escape(mySize, 1, c);
+			else
+				myWords[(int) (mySize >>> 5)] |= (long) code << ((mySize & 31) << 1);
+			mySize++;
+		}
+	}
+
+	// add an escape run at the end of the runs, merging it with the last run
+	// if it continues it
+	private void escape(long start, int length, char c) {
+		int last = myRuns - 1;
+		if (last >= 0 && myRunChars[last] == c && myRunStarts[last] + myRunLengths[last] == start
+				&& myRunLengths[last] <= Integer.MAX_VALUE - length) {
+			myRunLengths[last] += length;
+			return;
+		}
+		if (myRuns == myRunStarts.length) {
+			myRunStarts = Arrays.copyOf(myRunStarts, 2 * myRuns);
+			myRunLengths = Arrays.copyOf(myRunLengths, 2 * myRuns);
+			myRunChars = Arrays.copyOf(myRunChars, 2 * myRuns);
+		}
+		myRunStarts[myRuns] = start;
+		myRunLengths[myRuns] = length;
+		myRunChars[myRuns] = c;
+		myRuns++;
+	}
+
+	/**
+	 * Returns the number of nucleotides/base-pairs in this strand.
+	 */
+	@Override
+	public long size() {
+		return mySize;
+	}
+
+	/**
+	 * Returns the nucleotide at index.
+	 *
+	 * @throws an IndexOutOfBoundsException if index is not in the strand
+	 */
+	public char charAt(long index) {
+		if (index < 0 || index >= mySize)
+			throw new IndexOutOfBoundsException("Index " + index + " is not in the strand.");
+
+		// the last run starting at or before index
+		int low = 0;
+		int high = myRuns - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (myRunStarts[mid] <= index)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		if (high >= 0 && index < myRunStarts[high] + myRunLengths[high])
+			return myRunChars[high];
+		return myAlphabet.charAt((int) (myWords[(int) (index >>> 5)] >>> ((index & 31) << 1)) & 3);
+	}
+
+	/**
+	 * Returns the sequence of DNA this object represents as a String
+	 *
+	 * @return the sequence of DNA this represents
+	 * @throws an IllegalStateException if the strand is too long for a String
+	 */
+	@Override
+	public String toString() {
+		if (mySize > Integer.MAX_VALUE)
+			throw new IllegalStateException("Strand is too long for a String.");
+		char[] strand = new char[(int) mySize];
+		if (myAlphabet != null) {
+			char[] alphabet = myAlphabet.toCharArray();
+			for (int w = 0, i = 0; i < strand.length; w++) {
+				long word = myWords[w];
+				int end = Math.min(strand.length, i + 32);
+				for (; i < end; i++) {
+					strand[i] = alphabet[(int) word & 3];
+					word >>>= 2;
+				}
+			}
+		}
+		for (int r = 0; r < myRuns; r++) {
+			int start = (int) myRunStarts[r];
+			Arrays.fill(strand, start, start + myRunLengths[r], myRunChars[r]);
+		}
+		return new String(strand);
+	}
+
+	/**
+	 * Return some string identifying this class.
+	 *
+	 * @return a string representing this strand and its characteristics
+	 */
+	@Override
+	public String strandInfo() {
+		return this.getClass().toString();
+	}
+
+	/**
+	 * Append a strand of DNA to this strand. A PackedStrand coded in the same
+	 * case is appended a word at a time; any other strand is appended as its
+	 * String.
+	 *
+	 * @param dna
+	 *            is the strand being appended
+	 */
+	@Override
+	public IDnaStrand append(IDnaStrand dna) {
+		if (!(dna instanceof PackedStrand)) {
+			return append(dna.toString());
+		}
+		PackedStrand other = (PackedStrand) dna;
+		if (other.myAlphabet != null && myAlphabet != null && other.myAlphabet != myAlphabet) {
+			return append(dna.toString());
+		}
+		if (myAlphabet == null)
+			myAlphabet = other.myAlphabet;
+
+		// copy first if other is this strand, which is about to change
+		long size = other.mySize;
+		int runs = other.myRuns;
+		int n = words(size);
+		long[] words = other == this ? Arrays.copyOf(myWords, n) : other.myWords;
+		long[] runStarts = other == this ? Arrays.copyOf(myRunStarts, runs) : other.myRunStarts;
+		int[] runLengths = other == this ? Arrays.copyOf(myRunLengths, runs) : other.myRunLengths;
+		char[] runChars = other == this ? Arrays.copyOf(myRunChars, runs) : other.myRunChars;
+
+		ensureCapacity(mySize + size);
+		int base = (int) (mySize >>> 5);
+		int shift = (int) (mySize & 31) << 1;
+		for (int j = 0; j < n; j++) {
+			myWords[base + j] |= words[j] << shift;
+			if (shift > 0 && base + j + 1 < myWords.length)
+				myWords[base + j + 1] |= words[j] >>> (64 - shift);
+		}
+		for (int r = 0; r < runs; r++) {
+			escape(mySize + runStarts[r], runLengths[r], runChars[r]);
+		}
+		mySize += size;
+		myAppends++;
+		return this;
+	}
+
+	/**
+	 * Simply append a strand of dna data to this strand.
+	 *
+	 * @param dna
+	 *            is the String appended to this strand
+	 */
+	@Override
+	public IDnaStrand append(String dna) {
+		add(dna);
+		myAppends++;
+		return this;
+	}
+
+	/**
+	 * Returns an IDnaStrand that is the reverse of this strand, e.g., for
+	 * "CGAT" returns "TAGC"
+	 *
+	 * @return reverse strand
+	 */
+	@Override
+	public IDnaStrand reverse() {
+		PackedStrand reverse = emptyCopy();
+		int n = words(mySize);
+		long[] words = new long[Math.max(n, 1)];
+		for (int j = 0; j < n; j++) {
+			words[n - 1 - j] = reverseBases(myWords[j]);
+		}
+
+		// the unused slots of the last word are now at the start: shift them
+		// out
+		int shift = (int) ((32 - (mySize & 31)) & 31) << 1;
+		if (shift > 0) {
+			for (int j = 0; j < n; j++) {
+				words[j] = (words[j] >>> shift) | (j + 1 < n ? words[j + 1] << (64 - shift) : 0);
+			}
+		}
+		reverse.myWords = words;
+		reverse.mySize = mySize;
+		for (int r = myRuns - 1; r >= 0; r--) {
+			reverse.escape(mySize - myRunStarts[r] - myRunLengths[r], myRunLengths[r], myRunChars[r]);
+		}
+		return reverse;
+	}
+
+	// reverse the order of the 32 2-bit bases in word
+	private static long reverseBases(long word) {
+		word = ((word >>> 2) & 0x3333333333333333L) | ((word & 0x3333333333333333L) << 2);
+		word = ((word >>> 4) & 0x0f0f0f0f0f0f0f0fL) | ((word & 0x0f0f0f0f0f0f0f0fL) << 4);
+		return Long.reverseBytes(word);
+	}
+
+	/**
+	 * Returns the complement of this strand, pairing a with t and c with g
+	 * (and ambiguity codes with theirs), e.g., for "CGAT" returns "GCTA".
+	 * Since the codes of paired bases add up to 3, this flips every bit.
+	 */
+	public PackedStrand complement() {
+		PackedStrand complement = emptyCopy();
+		int n = words(mySize);
+		long[] words = new long[Math.max(n, 1)];
+		for (int j = 0; j < n; j++) {
+			words[j] = ~myWords[j];
+		}
+		if ((mySize & 31) != 0)
+			words[n - 1] &= (1L << ((mySize & 31) << 1)) - 1;
+		complement.myWords = words;
+		complement.mySize = mySize;
+		for (int r = 0; r < myRuns; r++) {
+			char c = myRunChars[r];
+			complement.escape(myRunStarts[r], myRunLengths[r], c < 128 ? COMPLEMENT[c] : c);
+		}
+		return complement;
+	}
+
+	// an empty strand coded in the same case as this one
+	private PackedStrand emptyCopy() {
+		PackedStrand copy = new PackedStrand();
+		copy.myAlphabet = myAlphabet;
+		return copy;
+	}
+
+	/**
+	 * Cut this strand at every occurrence of enzyme, essentially replacing
+	 * every occurrence of enzyme with splicee. As with LinkStrand, a strand
+	 * without enzyme gives an empty strand.
+	 *
+	 * @param enzyme
+	 *            is the pattern/strand searched for and replaced
+	 * @param splicee
+	 *            is the pattern/strand replacing each occurrence of enzyme
+	 * @return the new strand leaving the original strand unchanged.
+	 * @throws an IllegalArgumentException if enzyme is empty
+	 */
+	@Override
+	public IDnaStrand cutAndSplice(String enzyme, String splicee) {
+		if (enzyme.length() == 0)
+			throw new IllegalArgumentException("Enzyme is empty.");
+		String search = toString();
+		PackedStrand ret = emptyCopy();
+		PackedStrand splice = new PackedStrand(splicee);
+		int start = 0;
+		int pos = search.indexOf(enzyme);
+		if (pos < 0)
+			return ret;
+		while (pos >= 0) {
+			ret.add(search.substring(start, pos));
+			ret.append(splice);
+			start = pos + enzyme.length();
+			pos = search.indexOf(enzyme, start);
+		}
+		ret.add(search.substring(start));
+		return ret;
+	}
+
+	/**
+	 * Returns the number of bytes held in this strand's arrays.
+	 */
+	public long sizeInBytes() {
+		return 8L * myWords.length + (8L + 4 + 2) * myRunStarts.length;
+	}
+
+	/**
+	 * Returns a string that can be printed to reveal information about what
+	 * this object has encountered as it is manipulated by append and
+	 * cutAndSplice.
+	 *
+	 * @return
+	 */
+	@Override
+	public String getStats() {
+		return String.format("# append calls = %d, escape runs = %d", myAppends, myRuns);
+	}
+}
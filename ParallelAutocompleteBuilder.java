@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds BinarySearchAutocomplete and TrieAutocomplete indexes using every
+ * core. Terms are created in parallel and sorted with Arrays.parallelSort;
+ * the trie is then built from the sorted terms by splitting them on their
+ * next character across a fork-join pool, and each subtree max weight is
+ * computed once on the way back up instead of once per added word.
+ *
+ * The results answer queries exactly like the single-threaded constructors.
+ *
+ */
+public class ParallelAutocompleteBuilder {
+
+	/**
+	 * Subtries covering fewer words than this are built in the current task
+	 * rather than forked.
+	 */
+	public static int SEQUENTIAL_THRESHOLD = 1 << 12;
+
+	/**
+	 * Parallel equivalent of new BinarySearchAutocomplete(terms, weights,
+	 * rangeMaxIndex).
+	 *
+	 * @throws a NullPointerException if either argument or any word is null
+	 * @throws an IllegalArgumentException if any weight is negative
+	 */
+	public static BinarySearchAutocomplete buildBinarySearch(String[] terms, double[] weights,
+			boolean rangeMaxIndex) {
+		return new BinarySearchAutocomplete(sortedTerms(terms, weights), rangeMaxIndex);
+	}
+
+	public static BinarySearchAutocomplete buildBinarySearch(String[] terms, double[] weights) {
+		return buildBinarySearch(terms, weights, false);
+	}
+
+	/**
+	 * Parallel equivalent of new TrieAutocomplete(terms, weights), run on the
+	 * common fork-join pool.
+	 *
+	 * @throws a NullPointerException if either argument or any word is null
+	 * @throws an IllegalArgumentException if any weight is negative
+	 */
+	public static TrieAutocomplete buildTrie(String[] terms, double[] weights) {
+		return buildTrie(terms, weights, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Parallel equivalent of new TrieAutocomplete(terms, weights), run on the
+	 * given pool.
+	 */
+	public static TrieAutocomplete buildTrie(String[] terms, double[] weights, ForkJoinPool pool) {
+		Term[] sorted = sortedTerms(terms, weights);
+
+		// duplicates are adjacent and, since the sort is stable, in input
+		// order; keep the last one like repeated adds do
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i + 1 < sorted.length && sorted[i].getWord().equals(sorted[i + 1].getWord()))
+				continue;
+			sorted[distinct++] = sorted[i];
+		}
+
+		Node root = new Node('-', null, 0);
+		pool.invoke(new SubtrieTask(sorted, 0, distinct, 0, root));
+		return new TrieAutocomplete(root);
+	}
+
+	/**
+	 * Creates the Terms in parallel and sorts them lexicographically.
+	 */
+	static Term[] sortedTerms(final String[] terms, final double[] weights) {
+		if (terms == null || weights == null)
+			throw new NullPointerException("One or more arguments null");
+
+		Term[] sorted = new Term[terms.length];
+		Arrays.parallelSetAll(sorted, i -> new Term(terms[i], weights[i]));
+		// stable, so equal words keep their input order
+		Arrays.parallelSort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Fills in the subtrie of node, which represents the common prefix of
+	 * length depth of the sorted, distinct terms [lo, hi). The children are
+	 * created here, one per distinct next character, so every task only ever
+	 * touches its own node's map; large children are forked.
+	 */
+	static class SubtrieTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Term[] myTerms;
+		private final int myLo, myHi, myDepth;
+		private final Node myNode;
+
+		SubtrieTask(Term[] terms, int lo, int hi, int depth, Node node) {
+			myTerms = terms;
+			myLo = lo;
+			myHi = hi;
+			myDepth = depth;
+			myNode = node;
+		}
+
+		@Override
+		protected void compute() {
+			int start = myLo;
+
+			// a word equal to the prefix sorts first
+			if (start < myHi && myTerms[start].getWord().length() == myDepth) {
+				myNode.isWord = true;
+				myNode.myWord = myTerms[start].getWord();
+				myNode.myWeight = myTerms[start].getWeight();
+				start++;
+			}
+
+			// one child per distinct next character
+			ArrayList<SubtrieTask> tasks = new ArrayList<SubtrieTask>();
+			while (start < myHi) {
+				char c = myTerms[start].getWord().charAt(myDepth);
+				int end = start + 1;
+				while (end < myHi && myTerms[end].getWord().charAt(myDepth) == c)
+					end++;
+
+				Node child = new Node(c, myNode, 0);
+				myNode.children.put(c, child);
+				tasks.add(new SubtrieTask(myTerms, start, end, myDepth + 1, child));
+				start = end;
+			}
+
+			// fork the large subtries, build the small ones here
+			for (SubtrieTask task : tasks) {
+				if (task.myHi - task.myLo >= SEQUENTIAL_THRESHOLD)
+					task.fork();
+			}
+			for (int i = tasks.size() - 1; i >= 0; i--) {
+				SubtrieTask task = tasks.get(i);
+				if (task.myHi - task.myLo >= SEQUENTIAL_THRESHOLD)
+					task.join();
+				else
+					task.compute();
+			}
+
+			// every subtree max weight below is final now
+			double max = myNode.myWeight;
+			for (SubtrieTask task : tasks) {
+				max = Math.max(max, task.myNode.mySubtreeMaxWeight);
+			}
+			myNode.mySubtreeMaxWeight = max;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compresses and decompresses on every core by cutting the input into
+ * independent chunks. Each chunk is a complete canonical HuffProcessor stream
+ * of its own, so chunks can be coded concurrently on a fork-join pool and
+ * in any order.
+ *
+ * The container starts with HUFF_PARALLEL_NUMBER and the chunk size, then
+ * holds groups of up to two chunks per pool thread. A group is its chunk
+ * count, an index of the offset where each compressed chunk ends (relative
+ * to the end of the index), and the compressed chunks; a count of 0 ends
+ * the container. Every field is a whole number of bytes.
+ *
+ * The calling thread does all the reading and writing, overlapped with the
+ * coding: while the pool codes one group, it writes out the group before
+ * and reads in the group after, copying chunk payloads in bulk. At most
+ * those three groups are held in memory at a time, so memory stays bounded
+ * however large the input is.
+ *
+ */
+public class ParallelHuffProcessor implements Processor {
+	public static int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Most chunks a group may claim to have, to reject corrupt counts before
+	 * allocating an index for them.
+	 */
+	private static final int MAX_GROUP_CHUNKS = 1 << 16;
+
+	// bytes of a group's payload allocated before any of it is read
+	private static final int INITIAL_PAYLOAD = 1 << 20;
+
+	private final int myChunkSize;
+	private final ForkJoinPool myPool;
+	private final int myGroupChunks;
+
+	public ParallelHuffProcessor() {
+		this(DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a processor that cuts its input into chunks of chunkSize bytes
+	 * and codes them on pool.
+	 *
+	 * @throws an IllegalArgumentException if chunkSize is not positive
+	 */
+	public ParallelHuffProcessor(int chunkSize, ForkJoinPool pool) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size is not positive.");
+		myChunkSize = chunkSize;
+		myPool = pool;
+		myGroupChunks = Math.min(2 * pool.getParallelism(), MAX_GROUP_CHUNKS);
+	}
+
+	@Override
+	public void compress(BitInputStream in, BitOutputStream out) {
+		out.writeBits(HuffProcessor.BITS_PER_INT, HuffProcessor.HUFF_PARALLEL_NUMBER);
+		out.writeBits(HuffProcessor.BITS_PER_INT, myChunkSize);
+
+		// groups are read alternately into two sets of chunks, one being
+		// filled while the pool compresses the other
+		byte[][][] chunks = new byte[2][myGroupChunks][];
+		int[] sizes = new int[myGroupChunks];
+		int current = 0;
+		int count = readGroup(in, chunks[current], sizes);
+		ArrayList<ForkJoinTask<byte[]>> previous = null;
+		while (count > 0) {
+			ArrayList<ForkJoinTask<byte[]>> tasks = new ArrayList<ForkJoinTask<byte[]>>();
+			for (int i = 0; i < count; i++) {
+				final byte[] chunk = chunks[current][i];
+				final int size = sizes[i];
+				tasks.add(myPool.submit(() -> compressChunk(chunk, size)));
+			}
+
+			// write the group before while this one is compressed; that also
+			// frees its chunks for the next group
+			if (previous != null)
+				writeGroup(previous, out);
+			previous = tasks;
+			current = 1 - current;
+			count = readGroup(in, chunks[current], sizes);
+		}
+		if (previous != null)
+			writeGroup(previous, out);
+
+		// no more groups
+		out.writeBits(HuffProcessor.BITS_PER_INT, 0);
+	}
+
+	/**
+	 * Reads up to chunks.length chunks from in, allocating them as needed,
+	 * and returns how many hold input, with their sizes in sizes: 0 once the
+	 * input has ended.
+	 */
+	private int readGroup(BitInputStream in, byte[][] chunks, int[] sizes) {
+		int count = 0;
+		while (count < chunks.length) {
+			if (chunks[count] == null)
+				chunks[count] = new byte[myChunkSize];
+			int size = readBytes(in, chunks[count], 0, myChunkSize);
+			if (size > 0)
+				sizes[count++] = size;
+			if (size < myChunkSize)
+				break;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the index and the compressed chunks of a group, waiting for
+	 * each chunk as it is needed.
+	 */
+	private static void writeGroup(ArrayList<ForkJoinTask<byte[]>> tasks, BitOutputStream out) {
+		out.writeBits(HuffProcessor.BITS_PER_INT, tasks.size());
+		int end = 0;
+		for (ForkJoinTask<byte[]> task : tasks) {
+			end += task.join().length;
+			out.writeBits(HuffProcessor.BITS_PER_INT, end);
+		}
+		for (ForkJoinTask<byte[]> task : tasks) {
+			byte[] chunk = task.join();
+			writeBytes(out, chunk, 0, chunk.length);
+		}
+	}
+
+	/**
+	 * Fills b[off, off + len) from in and returns the number of bytes read,
+	 * which is less than len only at the end of the input. A
+	 * MappedBitInputStream copies them in bulk.
+	 */
+	private static int readBytes(BitInputStream in, byte[] b, int off, int len) {
+		int size = 0;
+		try {
+			while (size < len) {
+				int read = in.read(b, off + size, len - size);
+				if (read <= 0)
+					break;
+				size += read;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return size;
+	}
+
+	/**
+	 * Writes b[off, off + len) to out, in bulk to a MappedBitOutputStream
+	 * and otherwise 16 bits per writeBits call; BitOutputStream.writeBits
+	 * sign-extends a 32-bit value.
+	 */
+	private static void writeBytes(BitOutputStream out, byte[] b, int off, int len) {
+		if (out instanceof MappedBitOutputStream) {
+			((MappedBitOutputStream) out).write(b, off, len);
+			return;
+		}
+		int i = off;
+		for (; i + 2 <= off + len; i += 2) {
+			out.writeBits(16, (b[i] & 0xff) << 8 | (b[i + 1] & 0xff));
+		}
+		for (; i < off + len; i++) {
+			out.writeBits(HuffProcessor.BITS_PER_WORD, b[i]);
+		}
+	}
+
+	/**
+	 * Compresses chunk[0..size) into a complete canonical Huffman stream,
+	 * reading it in place through a MappedBitInputStream.
+	 */
+	private static byte[] compressChunk(byte[] chunk, int size) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(size / 2 + 64);
+		BitOutputStream out = new BitOutputStream(bytes);
+		new HuffProcessor(size, true).compress(new MappedBitInputStream(ByteBuffer.wrap(chunk, 0, size)), out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public void decompress(BitInputStream in, BitOutputStream out) {
+		HuffBitReader bits = new HuffBitReader(in);
+		int magic = bits.readBits(HuffProcessor.BITS_PER_INT);
+		if (magic == HuffProcessor.HUFF_PARALLEL_NUMBER)
+			decompressChunks(bits, out, myPool);
+		else
+			new HuffProcessor().decompress(magic, bits, out);
+	}
+
+	/**
+	 * Decompresses the rest of a parallel container, whose magic number has
+	 * already been read from in, decoding each group's chunks on pool while
+	 * the group before is written and the group after is read.
+	 */
+	static void decompressChunks(HuffBitReader in, BitOutputStream out, ForkJoinPool pool) {
+		final int chunkSize = in.readBits(HuffProcessor.BITS_PER_INT);
+		if (chunkSize <= 0)
+			throw new HuffException("Bad chunk size.");
+
+		ArrayList<ForkJoinTask<ByteBuffer>> previous = null;
+		int[] ends = readIndex(in, chunkSize);
+		while (ends != null) {
+			final byte[] payload = readPayload(in, ends[ends.length - 1]);
+
+			ArrayList<ForkJoinTask<ByteBuffer>> tasks = new ArrayList<ForkJoinTask<ByteBuffer>>();
+			for (int i = 0; i < ends.length; i++) {
+				final int start = i == 0 ? 0 : ends[i - 1];
+				final int length = ends[i] - start;
+				tasks.add(pool.submit(() -> decompressChunk(payload, start, length, chunkSize)));
+			}
+
+			if (previous != null)
+				writeChunks(previous, out);
+			previous = tasks;
+			ends = readIndex(in, chunkSize);
+		}
+		if (previous != null)
+			writeChunks(previous, out);
+	}
+
+	/**
+	 * Reads a group's chunk count and index, and returns the offsets where
+	 * its chunks end, or null for the count of 0 that ends the container.
+	 * No chunk of chunkSize bytes compresses to more than
+	 * HuffProcessor.maxCanonicalLength(chunkSize) bytes, so a larger last
+	 * offset is rejected before anything is allocated for it.
+	 */
+	private static int[] readIndex(HuffBitReader in, int chunkSize) {
+		int count = in.readBits(HuffProcessor.BITS_PER_INT);
+		if (count == 0)
+			return null;
+		if (count < 0 || count > MAX_GROUP_CHUNKS)
+			throw new HuffException("Bad chunk index.");
+		int[] ends = new int[count];
+		for (int i = 0; i < count; i++) {
+			ends[i] = in.readBits(HuffProcessor.BITS_PER_INT);
+			if (ends[i] < (i == 0 ? 0 : ends[i - 1]))
+				throw new HuffException("Bad chunk index.");
+		}
+		if (ends[count - 1] > count * HuffProcessor.maxCanonicalLength(chunkSize))
+			throw new HuffException("Bad chunk index.");
+		return ends;
+	}
+
+	/**
+	 * Reads a group's length bytes of compressed chunks. The array grows as
+	 * the bytes arrive, so a corrupt length cannot allocate much more than
+	 * the input actually holds.
+	 */
+	private static byte[] readPayload(HuffBitReader in, int length) {
+		byte[] payload = new byte[Math.min(length, INITIAL_PAYLOAD)];
+		int size = 0;
+		while (true) {
+			size += in.readBytes(payload, size, payload.length - size);
+			if (size < payload.length)
+				throw new HuffException("Chunk is truncated.");
+			if (size == length)
+				return payload;
+			payload = Arrays.copyOf(payload, (int) Math.min(length, 2L * payload.length));
+		}
+	}
+
+	/**
+	 * Writes the decompressed chunks of a group in order, waiting for each
+	 * as it is needed.
+	 */
+	private static void writeChunks(ArrayList<ForkJoinTask<ByteBuffer>> tasks, BitOutputStream out) {
+		for (ForkJoinTask<ByteBuffer> task : tasks) {
+			ByteBuffer chunk = task.join();
+			writeBytes(out, chunk.array(), 0, chunk.position());
+		}
+	}
+
+	/**
+	 * Decompresses payload[start, start + length) into a buffer of at most
+	 * chunkSize bytes, returned with its position after the last byte. Every
+	 * code is at least 1 bit, so a chunk decompresses to at most 8 bytes per
+	 * compressed byte, which bounds the buffer when chunkSize is corrupt.
+	 */
+	private static ByteBuffer decompressChunk(byte[] payload, int start, int length, int chunkSize) {
+		ByteBuffer bytes = ByteBuffer.wrap(new byte[(int) Math.min(chunkSize, 8L * length)]);
+		BitOutputStream out = new MappedBitOutputStream(bytes);
+		try {
+			new HuffProcessor().decompress(new MappedBitInputStream(ByteBuffer.wrap(payload, start, length)), out);
+			out.flush();
+		} catch (BufferOverflowException e) {
+			throw new HuffException("Chunk is too long.");
+		}
+		return bytes;
+	}
+}
\ No newline at end of file
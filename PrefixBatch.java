@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shared plumbing for the topKMatchesBatch methods of the autocomplete
+ * indexes. A batch is answered in sorted prefix order, so a prefix that
+ * extends an earlier one ("a", "ap", "app") comes right after it and can
+ * start from the range or trie node that the earlier one already found.
+ * Large batches are cut into runs of consecutive sorted prefixes and the
+ * runs are answered in parallel on a fork-join pool.
+ *
+ */
+public class PrefixBatch {
+
+	/**
+	 * Runs of fewer prefixes than this are answered in the current task
+	 * rather than forked.
+	 */
+	public static int SEQUENTIAL_THRESHOLD = 256;
+
+	/**
+	 * Answers the prefixes at order[from..to) of a batch, in that order.
+	 */
+	interface Run {
+		void answer(int[] order, int from, int to);
+	}
+
+	/**
+	 * Returns the indices of prefixes sorted by their prefix.
+	 *
+	 * @throws a NullPointerException if prefixes or any prefix is null
+	 */
+	static int[] sortedOrder(final String[] prefixes) {
+		if (prefixes == null)
+			throw new NullPointerException("Prefixes are null.");
+		Integer[] boxed = new Integer[prefixes.length];
+		for (int i = 0; i < prefixes.length; i++) {
+			if (prefixes[i] == null)
+				throw new NullPointerException("Prefix is null.");
+			boxed[i] = i;
+		}
+		Arrays.sort(boxed, (i, j) -> prefixes[i].compareTo(prefixes[j]));
+
+		int[] order = new int[boxed.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = boxed[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Answers the whole of order with run, on pool if it is not null and the
+	 * batch is large enough to be worth splitting.
+	 */
+	static void answer(int[] order, ForkJoinPool pool, Run run) {
+		if (pool == null || order.length < 2 * SEQUENTIAL_THRESHOLD)
+			run.answer(order, 0, order.length);
+		else
+			pool.invoke(new RunTask(order, 0, order.length, run));
+	}
+
+	/**
+	 * Answers order[lo..hi), halving it until the halves are small enough to
+	 * answer directly.
+	 */
+	private static class RunTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] myOrder;
+		private final int myLo;
+		private final int myHi;
+		private final Run myRun;
+
+		RunTask(int[] order, int lo, int hi, Run run) {
+			myOrder = order;
+			myLo = lo;
+			myHi = hi;
+			myRun = run;
+		}
+
+		@Override
+		protected void compute() {
+			if (myHi - myLo < 2 * SEQUENTIAL_THRESHOLD) {
+				myRun.answer(myOrder, myLo, myHi);
+				return;
+			}
+			int mid = (myLo + myHi) >>> 1;
+			invokeAll(new RunTask(myOrder, myLo, mid, myRun), new RunTask(myOrder, mid, myHi, myRun));
+		}
+	}
+}
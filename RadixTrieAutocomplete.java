@@ -0,0 +1,286 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Path-compressed (radix) trie implementation of Autocompletor. Where
+ * TrieAutocomplete has one Node per character, here every chain of nodes
+ * with a single child and no word is merged into one edge labeled with the
+ * whole string, so there is a node only where words end or branch. Children
+ * are kept in an array sorted by the first character of their label, and
+ * the search is pruned with subtree max weights exactly as in
+ * TrieAutocomplete.
+ *
+ */
+public class RadixTrieAutocomplete implements Autocompletor {
+
+	/**
+	 * A node in the radix trie. myLabel is the string on the edge leading
+	 * into the node, so a node's full prefix is the concatenation of the
+	 * labels from the root down.
+	 */
+	static class RadixNode {
+		String myLabel;
+		RadixNode[] myChildren;
+
+		/**
+		 * Only non-null if a word ends at this node.
+		 */
+		String myWord;
+		double myWeight = -1;
+		double mySubtreeMaxWeight = -1;
+	}
+
+	private static final RadixNode[] NO_CHILDREN = new RadixNode[0];
+
+	private RadixNode myRoot;
+	private int myNodeCount;
+
+	/**
+	 * Constructor method for RadixTrieAutocomplete. If a word appears more
+	 * than once in terms, the weight of its last occurrence is used.
+	 *
+	 * @param terms
+	 *            - The words we will autocomplete from
+	 * @param weights
+	 *            - Their weights, such that terms[i] has weight weights[i].
+	 * @throws a
+	 *             NullPointerException if either argument or any word is null
+	 * @throws an
+	 *             IllegalArgumentException if any weight is negative
+	 */
+	public RadixTrieAutocomplete(String[] terms, double[] weights) {
+		if (terms == null || weights == null)
+			throw new NullPointerException("One or more arguments null");
+
+		Term[] sorted = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			sorted[i] = new Term(terms[i], weights[i]);
+		}
+		Arrays.sort(sorted);
+
+		// keep the last occurrence of every word
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i + 1 < sorted.length && sorted[i].getWord().equals(sorted[i + 1].getWord()))
+				continue;
+			sorted[distinct++] = sorted[i];
+		}
+
+		myRoot = build(sorted, 0, distinct, 0);
+	}
+
+	/**
+	 * Builds the node for the sorted, distinct terms [lo, hi), whose edge
+	 * starts at character start. The edge runs as far as all the terms agree,
+	 * which for a sorted range is the common prefix of its first and last
+	 * term.
+	 */
+	private RadixNode build(Term[] terms, int lo, int hi, int start) {
+		RadixNode node = new RadixNode();
+		myNodeCount++;
+		if (lo == hi) {
+			node.myLabel = "";
+			node.myChildren = NO_CHILDREN;
+			return node;
+		}
+
+		String first = terms[lo].getWord();
+		String last = terms[hi - 1].getWord();
+		int end = start;
+		while (end < first.length() && end < last.length() && first.charAt(end) == last.charAt(end))
+			end++;
+		node.myLabel = first.substring(start, end);
+
+		// a word equal to the whole prefix sorts first
+		if (first.length() == end) {
+			node.myWord = first;
+			node.myWeight = terms[lo].getWeight();
+			lo++;
+		}
+
+		ArrayList<RadixNode> children = new ArrayList<RadixNode>();
+		while (lo < hi) {
+			char c = terms[lo].getWord().charAt(end);
+			int groupEnd = lo + 1;
+			while (groupEnd < hi && terms[groupEnd].getWord().charAt(end) == c)
+				groupEnd++;
+			children.add(build(terms, lo, groupEnd, end));
+			lo = groupEnd;
+		}
+		node.myChildren = children.toArray(new RadixNode[children.size()]);
+
+		node.mySubtreeMaxWeight = node.myWeight;
+		for (RadixNode child : node.myChildren) {
+			node.mySubtreeMaxWeight = Math.max(node.mySubtreeMaxWeight, child.mySubtreeMaxWeight);
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the child of node whose label starts with c, or null.
+	 */
+	private static RadixNode child(RadixNode node, char c) {
+		int low = 0;
+		int high = node.myChildren.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char label = node.myChildren[mid].myLabel.charAt(0);
+			if (label < c)
+				low = mid + 1;
+			else if (label > c)
+				high = mid - 1;
+			else
+				return node.myChildren[mid];
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the highest node whose subtrie holds exactly the words starting
+	 * with prefix, or null if there are none. prefix may end partway along
+	 * the node's edge.
+	 */
+	private RadixNode find(String prefix) {
+		RadixNode node = myRoot;
+		int pos = 0;
+		while (true) {
+			String label = node.myLabel;
+			int n = Math.min(label.length(), prefix.length() - pos);
+			if (!prefix.regionMatches(pos, label, 0, n))
+				return null;
+			pos += n;
+			if (pos == prefix.length())
+				return node;
+			node = child(node, prefix.charAt(pos));
+			if (node == null)
+				return null;
+		}
+	}
+
+	/**
+	 * A node or word waiting in the best-first search, keyed by its subtree
+	 * max weight or by the word's weight.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final RadixNode node;
+		final boolean isWord;
+		final double key;
+
+		Entry(RadixNode node, boolean isWord) {
+			this.node = node;
+			this.isWord = isWord;
+			this.key = isWord ? node.myWeight : node.mySubtreeMaxWeight;
+		}
+
+		// in reverse key order to make the PriorityQueue act as a max heap
+		@Override
+		public int compareTo(Entry o) {
+			return Double.compare(o.key, key);
+		}
+	}
+
+	/**
+	 * Required by the Autocompletor interface. Returns an array containing the
+	 * k words in the trie with the largest weight which match the given
+	 * prefix, in descending weight order. If less than k words exist matching
+	 * the given prefix (including if no words exist), then the array instead
+	 * contains all those words.
+	 *
+	 * @param prefix
+	 *            - A prefix which all returned words must start with
+	 * @param k
+	 *            - The (maximum) number of words to be returned
+	 * @return An array of the k words with the largest weights among all words
+	 *         starting with prefix, in descending weight order.
+	 * @throws a
+	 *             NullPointerException if prefix is null
+	 */
+	@Override
+	public String[] topKMatches(String prefix, int k) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null.");
+
+		RadixNode start = find(prefix);
+		if (start == null || k <= 0)
+			return new String[0];
+
+		ArrayList<String> list = new ArrayList<String>();
+		PriorityQueue<Entry> pq = new PriorityQueue<Entry>();
+		pq.add(new Entry(start, false));
+
+		// a word popped off the queue outweighs everything left in it
+		while (!pq.isEmpty() && list.size() < k) {
+			Entry entry = pq.poll();
+			if (entry.isWord) {
+				list.add(entry.node.myWord);
+				continue;
+			}
+			if (entry.node.myWord != null)
+				pq.add(new Entry(entry.node, true));
+			for (RadixNode child : entry.node.myChildren) {
+				pq.add(new Entry(child, false));
+			}
+		}
+
+		return list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * Given a prefix, returns the largest-weight word in the trie starting with
+	 * that prefix.
+	 *
+	 * @param prefix
+	 *            - the prefix the returned word should start with
+	 * @return The word with the largest weight starting with prefix, or an
+	 *         empty string if none exists
+	 * @throws a
+	 *             NullPointerException if the prefix is null
+	 */
+	@Override
+	public String topMatch(String prefix) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null.");
+
+		RadixNode node = find(prefix);
+		if (node == null || node.mySubtreeMaxWeight < 0)
+			return "";
+
+		// follow the child holding the subtree max until reaching the word
+		while (node.myWeight != node.mySubtreeMaxWeight) {
+			for (RadixNode child : node.myChildren) {
+				if (child.mySubtreeMaxWeight == node.mySubtreeMaxWeight) {
+					node = child;
+					break;
+				}
+			}
+		}
+		return node.myWord;
+	}
+
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 */
+	public int nodeCount() {
+		return myNodeCount;
+	}
+
+	/**
+	 * Returns the number of Nodes in a TrieAutocomplete, including the root,
+	 * for comparison with nodeCount.
+	 */
+	public static int nodeCount(TrieAutocomplete trie) {
+		int count = 0;
+		ArrayDeque<Node> stack = new ArrayDeque<Node>();
+		stack.push(trie.myRoot);
+		while (!stack.isEmpty()) {
+			Node current = stack.pop();
+			count++;
+			for (Node child : current.children.values()) {
+				stack.push(child);
+			}
+		}
+		return count;
+	}
+}
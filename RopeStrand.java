@@ -0,0 +1,420 @@
+import java.util.ArrayDeque;
+
+/**
+ * A DNA strand stored as a rope: a balanced binary tree whose leaves are
+ * runs of characters and whose internal nodes concatenate their children.
+ * Every node knows the length below it, so charAt descends one path and
+ * split cuts along one path, both in O(log n) time, without copying the
+ * characters; a leaf is a window onto a String that other leaves may share.
+ *
+ * Nodes are never changed once built. Appending another RopeStrand links
+ * its tree in as it is, so the two strands share structure, and a strand
+ * produced by split, substring or cutAndSplice shares every untouched part
+ * of the original. Trees are kept balanced the way AVL trees are: the two
+ * children of a node differ in height by at most one.
+ *
+ */
+public class RopeStrand implements IDnaStrand {
+
+	/**
+	 * Leaves shorter than this are merged when they are concatenated, so that
+	 * many small appends do not produce a tree of single characters.
+	 */
+	public static int LEAF_SIZE = 1024;
+
+	private static abstract class Piece {
+		final long myLength;
+		final int myHeight;
+
+		Piece(long length, int height) {
+			myLength = length;
+			myHeight = height;
+		}
+	}
+
+	private static class Leaf extends Piece {
+		final String myText;
+		final int myStart;
+
+		// the characters myText[start, start + length)
+		Leaf(String text, int start, int length) {
+			super(length, 0);
+			myText = text;
+			myStart = start;
+		}
+
+		String text() {
+			return myText.substring(myStart, myStart + (int) myLength);
+		}
+	}
+
+	private static class Concat extends Piece {
+		final Piece myLeft;
+		final Piece myRight;
+
+		Concat(Piece left, Piece right) {
+			super(left.myLength + right.myLength, 1 + Math.max(left.myHeight, right.myHeight));
+			myLeft = left;
+			myRight = right;
+		}
+	}
+
+	private static final Piece EMPTY = new Leaf("", 0, 0);
+
+	private Piece myRoot;
+	private long myAppends;
+
+	/**
+	 * Create a strand representing an empty DNA strand, length of zero.
+	 */
+	public RopeStrand() {
+		this("");
+	}
+
+	/**
+	 * Create a strand representing s. No error checking is done to see if s
+	 * represents valid genomic/DNA data.
+	 *
+	 * @param s
+	 *            is the source of cgat data for this strand
+	 */
+	public RopeStrand(String s) {
+		initializeFrom(s);
+	}
+
+	private RopeStrand(Piece root) {
+		myRoot = root;
+	}
+
+	/**
+	 * Returns the concatenation of a and b, balanced if a and b are. Costs
+	 * time proportional to the difference of their heights.
+	 */
+	private static Piece join(Piece a, Piece b) {
+		if (a.myLength == 0)
+			return b;
+		if (b.myLength == 0)
+			return a;
+		if (a instanceof Leaf && b instanceof Leaf && a.myLength + b.myLength <= LEAF_SIZE) {
+			String text = ((Leaf) a).text() + ((Leaf) b).text();
+			return new Leaf(text, 0, text.length());
+		}
+		if (a.myHeight > b.myHeight + 1) {
+			Concat c = (Concat) a;
+			return balance(c.myLeft, join(c.myRight, b));
+		}
+		if (b.myHeight > a.myHeight + 1) {
+			Concat c = (Concat) b;
+			return balance(join(a, c.myLeft), c.myRight);
+		}
+		return new Concat(a, b);
+	}
+
+	/**
+	 * Returns the concatenation of balanced trees whose heights differ by at
+	 * most two, rotated so that it is balanced too.
+	 */
+	private static Piece balance(Piece left, Piece right) {
+		if (left.myHeight > right.myHeight + 1) {
+			Concat c = (Concat) left;
+			if (c.myLeft.myHeight >= c.myRight.myHeight)
+				return new Concat(c.myLeft, new Concat(c.myRight, right));
+			Concat inner = (Concat) c.myRight;
+			return new Concat(new Concat(c.myLeft, inner.myLeft), new Concat(inner.myRight, right));
+		}
+		if (right.myHeight > left.myHeight + 1) {
+			Concat c = (Concat) right;
+			if (c.myRight.myHeight >= c.myLeft.myHeight)
+				return new Concat(new Concat(left, c.myLeft), c.myRight);
+			Concat inner = (Concat) c.myLeft;
+			return new Concat(new Concat(left, inner.myLeft), new Concat(inner.myRight, c.myRight));
+		}
+		return new Concat(left, right);
+	}
+
+	/**
+	 * Returns the first index characters of p and the rest.
+	 */
+	private static Piece[] split(Piece p, long index) {
+		if (index <= 0)
+			return new Piece[] { EMPTY, p };
+		if (index >= p.myLength)
+			return new Piece[] { p, EMPTY };
+		if (p instanceof Leaf) {
+			Leaf leaf = (Leaf) p;
+			int cut = (int) index;
+			return new Piece[] { new Leaf(leaf.myText, leaf.myStart, cut),
+					new Leaf(leaf.myText, leaf.myStart + cut, (int) leaf.myLength - cut) };
+		}
+		Concat c = (Concat) p;
+		long leftLength = c.myLeft.myLength;
+		if (index == leftLength)
+			return new Piece[] { c.myLeft, c.myRight };
+		if (index < leftLength) {
+			Piece[] parts = split(c.myLeft, index);
+			return new Piece[] { parts[0], join(parts[1], c.myRight) };
+		}
+		Piece[] parts = split(c.myRight, index - leftLength);
+		return new Piece[] { join(c.myLeft, parts[0]), parts[1] };
+	}
+
+	/**
+	 * Returns the nucleotide at index.
+	 *
+	 * @throws an IndexOutOfBoundsException if index is not in the strand
+	 */
+	public char charAt(long index) {
+		if (index < 0 || index >= myRoot.myLength)
+			throw new IndexOutOfBoundsException("Index " + index + " is not in the strand.");
+		Piece p = myRoot;
+		while (p instanceof Concat) {
+			Concat c = (Concat) p;
+			if (index < c.myLeft.myLength)
+				p = c.myLeft;
+			else {
+				index -= c.myLeft.myLength;
+				p = c.myRight;
+			}
+		}
+		Leaf leaf = (Leaf) p;
+		return leaf.myText.charAt(leaf.myStart + (int) index);
+	}
+
+	/**
+	 * Returns the strand of nucleotides start to end - 1, sharing structure
+	 * with this one.
+	 *
+	 * @throws an IndexOutOfBoundsException if start and end do not describe a
+	 *             range of the strand
+	 */
+	public RopeStrand substring(long start, long end) {
+		if (start < 0 || end > myRoot.myLength || start > end)
+			throw new IndexOutOfBoundsException("Range " + start + " to " + end + " is not in the strand.");
+		return new RopeStrand(split(split(myRoot, end)[0], start)[1]);
+	}
+
+	/**
+	 * Returns the strands before and from index, which share structure with
+	 * this one.
+	 *
+	 * @throws an IndexOutOfBoundsException if index is not in 0..size()
+	 */
+	public RopeStrand[] split(long index) {
+		if (index < 0 || index > myRoot.myLength)
+			throw new IndexOutOfBoundsException("Index " + index + " is not in the strand.");
+		Piece[] parts = split(myRoot, index);
+		return new RopeStrand[] { new RopeStrand(parts[0]), new RopeStrand(parts[1]) };
+	}
+
+	/**
+	 * Cut this strand at every occurrence of enzyme, essentially replacing
+	 * every occurrence of enzyme with splicee. Occurrences are found left to
+	 * right without overlapping, even where they cross leaves, and the parts
+	 * between them are shared with this strand, as is the single copy of
+	 * splicee. As with LinkStrand, a strand without enzyme gives an empty
+	 * strand.
+	 *
+	 * @param enzyme
+	 *            is the pattern/strand searched for and replaced
+	 * @param splicee
+	 *            is the pattern/strand replacing each occurrence of enzyme
+	 * @return the new strand leaving the original strand unchanged.
+	 * @throws an IllegalArgumentException if enzyme is empty
+	 */
+	@Override
+	public IDnaStrand cutAndSplice(String enzyme, String splicee) {
+		if (enzyme.length() == 0)
+			throw new IllegalArgumentException("Enzyme is empty.");
+		int[] fail = failure(enzyme);
+		Piece splice = new Leaf(splicee, 0, splicee.length());
+
+		// rest is what follows the last occurrence, which starts at index
+		// consumed of this strand
+		Piece result = EMPTY;
+		Piece rest = myRoot;
+		long consumed = 0;
+		boolean found = false;
+
+		// scan the leaves in order with the Knuth-Morris-Pratt automaton
+		int matched = 0;
+		long index = 0;
+		ArrayDeque<Piece> stack = new ArrayDeque<Piece>();
+		stack.push(myRoot);
+		while (!stack.isEmpty()) {
+			Piece p = stack.pop();
+			if (p instanceof Concat) {
+				stack.push(((Concat) p).myRight);
+				stack.push(((Concat) p).myLeft);
+				continue;
+			}
+			Leaf leaf = (Leaf) p;
+			for (int i = leaf.myStart; i < leaf.myStart + leaf.myLength; i++, index++) {
+				char c = leaf.myText.charAt(i);
+				while (matched > 0 && enzyme.charAt(matched) != c) {
+					matched = fail[matched - 1];
+				}
+				if (enzyme.charAt(matched) == c)
+					matched++;
+				if (matched == enzyme.length()) {
+					long start = index + 1 - enzyme.length();
+					Piece[] parts = split(rest, start - consumed);
+					result = join(join(result, parts[0]), splice);
+					rest = split(parts[1], enzyme.length())[1];
+					consumed = index + 1;
+					found = true;
+					matched = 0;
+				}
+			}
+		}
+
+		if (!found)
+			return new RopeStrand();
+		return new RopeStrand(join(result, rest));
+	}
+
+	/**
+	 * Returns the Knuth-Morris-Pratt failure function of pattern: entry i is
+	 * the length of the longest proper prefix of pattern[0..i] that is also
+	 * a suffix of it.
+	 */
+	private static int[] failure(String pattern) {
+		int[] fail = new int[pattern.length()];
+		int k = 0;
+		for (int i = 1; i < pattern.length(); i++) {
+			while (k > 0 && pattern.charAt(k) != pattern.charAt(i)) {
+				k = fail[k - 1];
+			}
+			if (pattern.charAt(k) == pattern.charAt(i))
+				k++;
+			fail[i] = k;
+		}
+		return fail;
+	}
+
+	/**
+	 * Initialize this strand so that it represents the value of source. No
+	 * error checking is performed.
+	 *
+	 * @param source
+	 *            is the source of this enzyme
+	 */
+	@Override
+	public void initializeFrom(String source) {
+		myRoot = new Leaf(source, 0, source.length());
+		myAppends = 0;
+	}
+
+	/**
+	 * Returns the number of nucleotides/base-pairs in this strand.
+	 */
+	@Override
+	public long size() {
+		return myRoot.myLength;
+	}
+
+	/**
+	 * Returns the height of the tree, which is O(log size()).
+	 */
+	public int height() {
+		return myRoot.myHeight;
+	}
+
+	/**
+	 * Returns the sequence of DNA this object represents as a String
+	 *
+	 * @return the sequence of DNA this represents
+	 * @throws an IllegalStateException if the strand is too long for a String
+	 */
+	@Override
+	public String toString() {
+		if (myRoot.myLength > Integer.MAX_VALUE)
+			throw new IllegalStateException("Strand is too long for a String.");
+		StringBuilder strand = new StringBuilder((int) myRoot.myLength);
+		ArrayDeque<Piece> stack = new ArrayDeque<Piece>();
+		stack.push(myRoot);
+		while (!stack.isEmpty()) {
+			Piece p = stack.pop();
+			if (p instanceof Concat) {
+				stack.push(((Concat) p).myRight);
+				stack.push(((Concat) p).myLeft);
+			}
+			else {
+				Leaf leaf = (Leaf) p;
+				strand.append(leaf.myText, leaf.myStart, leaf.myStart + (int) leaf.myLength);
+			}
+		}
+		return strand.toString();
+	}
+
+	/**
+	 * Return some string identifying this class.
+	 *
+	 * @return a string representing this strand and its characteristics
+	 */
+	@Override
+	public String strandInfo() {
+		return this.getClass().toString();
+	}
+
+	/**
+	 * Append a strand of DNA to this strand. A RopeStrand is linked in
+	 * without copying, sharing its structure; any other strand is appended
+	 * as its String.
+	 *
+	 * @param dna
+	 *            is the strand being appended
+	 */
+	@Override
+	public IDnaStrand append(IDnaStrand dna) {
+		if (dna instanceof RopeStrand) {
+			myRoot = join(myRoot, ((RopeStrand) dna).myRoot);
+			myAppends++;
+			return this;
+		}
+		return append(dna.toString());
+	}
+
+	/**
+	 * Simply append a strand of dna data to this strand.
+	 *
+	 * @param dna
+	 *            is the String appended to this strand
+	 */
+	@Override
+	public IDnaStrand append(String dna) {
+		myRoot = join(myRoot, new Leaf(dna, 0, dna.length()));
+		myAppends++;
+		return this;
+	}
+
+	/**
+	 * Returns an IDnaStrand that is the reverse of this strand, e.g., for
+	 * "CGAT" returns "TAGC"
+	 *
+	 * @return reverse strand
+	 */
+	@Override
+	public IDnaStrand reverse() {
+		return new RopeStrand(reverse(myRoot));
+	}
+
+	// mirror the tree and reverse each leaf, keeping it balanced
+	private static Piece reverse(Piece p) {
+		if (p instanceof Concat)
+			return new Concat(reverse(((Concat) p).myRight), reverse(((Concat) p).myLeft));
+		String reversed = new StringBuilder(((Leaf) p).text()).reverse().toString();
+		return new Leaf(reversed, 0, reversed.length());
+	}
+
+	/**
+	 * Returns a string that can be printed to reveal information about what
+	 * this object has encountered as it is manipulated by append and
+	 * cutAndSplice.
+	 *
+	 * @return
+	 */
+	@Override
+	public String getStats() {
+		return String.format("# append calls = %d, height = %d", myAppends, myRoot.myHeight);
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Thread-safe Autocompletor for serving queries from many threads while the
+ * terms change. Queries go to an immutable snapshot, an Autocompletor that
+ * nobody modifies, read through a volatile field, so they never take a lock.
+ * Updates are applied to a master copy of the terms; a background thread
+ * builds a new snapshot from it and publishes it with a single write.
+ *
+ * Every snapshot is built from scratch from a copy of all n terms, which
+ * takes O(n log n) time however few of them changed. Changes made while a
+ * rebuild waits to start share it, but under a steady stream of writes
+ * snapshots are rebuilt back to back. Where writes are frequent and the
+ * terms many, BinarySearchAutocomplete's own update and remove, which
+ * merge pending changes into the sorted terms in linear time, cost less.
+ *
+ * The snapshot factory must build an Autocompletor whose queries are safe to
+ * run concurrently while it is not being modified. All the implementations in
+ * this package are.
+ *
+ */
+public class SnapshotAutocomplete implements Autocompletor {
+
+	private final BiFunction<String[], double[], Autocompletor> myFactory;
+
+	/**
+	 * The snapshot queries currently run against.
+	 */
+	private volatile Autocompletor mySnapshot;
+
+	/**
+	 * The current terms and weights. Guarded by this.
+	 */
+	private final Map<String, Double> myTerms = new HashMap<String, Double>();
+
+	/**
+	 * Whether a rebuild has been scheduled but has not yet copied myTerms.
+	 * Guarded by this.
+	 */
+	private boolean myRebuildPending;
+
+	/**
+	 * Builds the snapshots of every instance, one at a time, so instances
+	 * that are dropped leave no thread behind.
+	 */
+	private static final ExecutorService ourBuilder = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "autocomplete-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Serves the terms from BinarySearchAutocomplete snapshots with a
+	 * range-maximum index.
+	 *
+	 * @param terms - The words we will autocomplete from
+	 * @param weights - Their weights, such that terms[i] has weight weights[i].
+	 * @throws a NullPointerException if either argument is null
+	 */
+	public SnapshotAutocomplete(String[] terms, double[] weights) {
+		this(terms, weights, (t, w) -> new BinarySearchAutocomplete(t, w, true));
+	}
+
+	/**
+	 * Serves the terms from snapshots built by factory. The first snapshot is
+	 * built before the constructor returns.
+	 *
+	 * @param terms - The words we will autocomplete from
+	 * @param weights - Their weights, such that terms[i] has weight weights[i].
+	 * @param factory - Builds a snapshot from arrays of distinct words and
+	 * their weights
+	 * @throws a NullPointerException if any argument is null
+	 */
+	public SnapshotAutocomplete(String[] terms, double[] weights,
+			BiFunction<String[], double[], Autocompletor> factory) {
+		if (terms == null || weights == null || factory == null)
+			throw new NullPointerException("One or more arguments null");
+		myFactory = factory;
+		for (int i = 0; i < terms.length; i++) {
+			myTerms.put(terms[i], weights[i]);
+		}
+		mySnapshot = build();
+	}
+
+	/**
+	 * Sets the weight of word, adding it if it is not already present. The
+	 * change shows up in queries once the next snapshot is published.
+	 *
+	 * @throws a NullPointerException if word is null
+	 * @throws an IllegalArgumentException if weight is negative
+	 */
+	public void update(String word, double weight) {
+		if (word == null)
+			throw new NullPointerException("Word is null.");
+		if (weight < 0)
+			throw new IllegalArgumentException("Weight is invalid.");
+		synchronized (this) {
+			myTerms.put(word, weight);
+		}
+		rebuild();
+	}
+
+	/**
+	 * Removes word. The change shows up in queries once the next snapshot is
+	 * published.
+	 *
+	 * @return true if word was present
+	 * @throws a NullPointerException if word is null
+	 */
+	public boolean remove(String word) {
+		if (word == null)
+			throw new NullPointerException("Word is null.");
+		boolean present;
+		synchronized (this) {
+			present = myTerms.remove(word) != null;
+		}
+		if (present)
+			rebuild();
+		return present;
+	}
+
+	/**
+	 * Schedules a new snapshot to be built in the background. Requests made
+	 * while a rebuild is waiting to start are folded into that rebuild.
+	 *
+	 * @return a Future that completes once a snapshot including every change
+	 *         made before this call has been published
+	 */
+	public synchronized Future<?> rebuild() {
+		if (myRebuildPending)
+			return ourBuilder.submit(() -> { });
+		myRebuildPending = true;
+		return ourBuilder.submit(() -> {
+			mySnapshot = build();
+		});
+	}
+
+	/**
+	 * Builds a snapshot from a copy of the current terms, taken under the lock
+	 * so the build itself runs without holding it.
+	 */
+	private Autocompletor build() {
+		String[] words;
+		double[] weights;
+		synchronized (this) {
+			myRebuildPending = false;
+			words = new String[myTerms.size()];
+			weights = new double[myTerms.size()];
+			int i = 0;
+			for (Map.Entry<String, Double> entry : myTerms.entrySet()) {
+				words[i] = entry.getKey();
+				weights[i] = entry.getValue();
+				i++;
+			}
+		}
+		return myFactory.apply(words, weights);
+	}
+
+	/**
+	 * Returns the snapshot queries are currently answered from.
+	 */
+	public Autocompletor snapshot() {
+		return mySnapshot;
+	}
+
+	@Override
+	public String[] topKMatches(String prefix, int k) {
+		return mySnapshot.topKMatches(prefix, k);
+	}
+
+	@Override
+	public String topMatch(String prefix) {
+		return mySnapshot.topMatch(prefix);
+	}
+}
@@ -61,22 +61,33 @@ public class Term implements Comparable<Term> {
 		 *            - Two Terms whose words are being compared
 		 */
 		public int compare(Term v, Term w) {
-			// TODO: Implement compare
-			String temp1 = v.myWord;
-			String temp2 = w.myWord;
-			
-			// if strings are greater length than r, take substring from 0 to r
-			if (temp1.length() > r) {
-				temp1 = temp1.substring(0, r);
-			}
-			if (temp2.length() > r) {
-				temp2 = temp2.substring(0, r);
-			}
-			
-			return temp1.compareTo(temp2);
+			return comparePrefix(v.myWord, w.myWord, r);
 		}
 	}
 
+	/**
+	 * Compares a and b lexicographically using only their first r letters,
+	 * with the same sign as comparing a.substring(0, r) to b.substring(0, r)
+	 * (or the whole word if it is shorter), but without creating substrings.
+	 * 
+	 * @param a/b
+	 *            - Two words being compared
+	 * @param r
+	 *            - The number of letters compared
+	 */
+	public static int comparePrefix(String a, String b, int r) {
+		int lenA = Math.min(a.length(), r);
+		int lenB = Math.min(b.length(), r);
+		int n = Math.min(lenA, lenB);
+		for (int i = 0; i < n; i++) {
+			char c1 = a.charAt(i);
+			char c2 = b.charAt(i);
+			if (c1 != c2)
+				return c1 - c2;
+		}
+		return lenA - lenB;
+	}
+
 	/**
 	 * A Comparator for comparing Terms using only their weights, in descending
 	 * order. This Comparator may be useful in writing your implementations of
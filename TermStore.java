@@ -0,0 +1,246 @@
+/**
+ * Sorted terms stored by column: the words concatenated into one char[], an
+ * int[] of offsets where each word starts, and a double[] of weights. Word i
+ * is myChars[myOffsets[i]..myOffsets[i+1]) and has weight myWeights[i].
+ *
+ * A Term[] costs two objects per term (the Term and its String), and each
+ * binary-search probe follows two references to reach the characters. Here a
+ * whole dictionary is a few arrays, and a probe reads one offset and the
+ * characters next to it.
+ *
+ * A word becomes a String only when word returns it, and that String is kept
+ * in myWords so that returning the word again allocates nothing. Only the
+ * words queries actually return, typically a small set of heavy ones, ever
+ * become objects for the garbage collector to trace.
+ *
+ */
+public class TermStore {
+	private final char[] myChars;
+	private final int[] myOffsets;
+	private final double[] myWeights;
+	private int mySize;
+
+	/**
+	 * myWords[i] is word i as a String once word(i) has been called, or null.
+	 * Threads racing to fill an entry store equal Strings, and a String is
+	 * safe to publish without synchronization, so queries need no lock.
+	 */
+	private final String[] myWords;
+
+	/**
+	 * Copies terms, which must be sorted lexicographically, into a store.
+	 *
+	 * @param terms - The sorted terms
+	 * @throws a NullPointerException if terms is null
+	 */
+	public TermStore(Term[] terms) {
+		this(terms.length, totalLength(terms));
+		for (Term term : terms) {
+			add(term.getWord(), term.getWeight());
+		}
+	}
+
+	/**
+	 * Creates an empty store with room for the given number of words and
+	 * characters, to be filled in sorted order with add.
+	 */
+	TermStore(int words, int chars) {
+		myChars = new char[chars];
+		myOffsets = new int[words + 1];
+		myWeights = new double[words];
+		myWords = new String[words];
+	}
+
+	private static int totalLength(Term[] terms) {
+		long chars = 0;
+		for (Term term : terms) {
+			chars += term.getWord().length();
+		}
+		if (chars > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many characters for one store.");
+		return (int) chars;
+	}
+
+	/**
+	 * Appends word with the given weight. Words must be added in sorted order.
+	 */
+	void add(String word, double weight) {
+		int start = myOffsets[mySize];
+		word.getChars(0, word.length(), myChars, start);
+		myWeights[mySize] = weight;
+		myOffsets[++mySize] = start + word.length();
+	}
+
+	/**
+	 * Appends word i of other.
+	 */
+	void add(TermStore other, int i) {
+		int start = myOffsets[mySize];
+		int length = other.length(i);
+		System.arraycopy(other.myChars, other.myOffsets[i], myChars, start, length);
+		myWeights[mySize] = other.myWeights[i];
+		myWords[mySize] = other.myWords[i];
+		myOffsets[++mySize] = start + length;
+	}
+
+	public int size() {
+		return mySize;
+	}
+
+	/**
+	 * Returns the total number of characters in the words.
+	 */
+	public int chars() {
+		return myOffsets[mySize];
+	}
+
+	public double weight(int i) {
+		return myWeights[i];
+	}
+
+	public int length(int i) {
+		return myOffsets[i + 1] - myOffsets[i];
+	}
+
+	/**
+	 * Returns word i as a String, creating it on the first call only.
+	 */
+	public String word(int i) {
+		String word = myWords[i];
+		if (word == null) {
+			word = new String(myChars, myOffsets[i], length(i));
+			myWords[i] = word;
+		}
+		return word;
+	}
+
+	/**
+	 * Returns the terms as a sorted Term[].
+	 */
+	public Term[] toTerms() {
+		Term[] terms = new Term[mySize];
+		for (int i = 0; i < mySize; i++) {
+			terms[i] = new Term(word(i), myWeights[i]);
+		}
+		return terms;
+	}
+
+	/**
+	 * Compares word i with word, as word(i).compareTo(word) would.
+	 */
+	public int compare(int i, String word) {
+		return comparePrefix(i, word, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Compares word i with prefix using only their first r letters, with the
+	 * same sign as Term.comparePrefix(word(i), prefix, r).
+	 */
+	public int comparePrefix(int i, String prefix, int r) {
+		int start = myOffsets[i];
+		int lenA = Math.min(myOffsets[i + 1] - start, r);
+		int lenB = Math.min(prefix.length(), r);
+		int n = Math.min(lenA, lenB);
+		for (int j = 0; j < n; j++) {
+			int diff = myChars[start + j] - prefix.charAt(j);
+			if (diff != 0)
+				return diff;
+		}
+		return lenA - lenB;
+	}
+
+	/**
+	 * Returns the index of word, or a negative number if it is absent.
+	 */
+	public int indexOf(String word) {
+		int low = 0;
+		int high = mySize - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(mid, word);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Returns the index of the first word starting with prefix, or -1 if there
+	 * is none.
+	 */
+	public int firstIndexOf(String prefix) {
+		return firstIndexOf(prefix, 0, mySize - 1);
+	}
+
+	/**
+	 * Returns the index of the first word in from..to, both inclusive,
+	 * starting with prefix, or -1 if there is none.
+	 */
+	public int firstIndexOf(String prefix, int from, int to) {
+		int r = prefix.length();
+		int low = from - 1;
+		int high = to + 1;
+
+		// word low sorts before prefix, word high does not
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (comparePrefix(mid, prefix, r) < 0)
+				low = mid;
+			else
+				high = mid;
+		}
+
+		if (high <= to && comparePrefix(high, prefix, r) == 0)
+			return high;
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the last word starting with prefix, or -1 if there
+	 * is none.
+	 */
+	public int lastIndexOf(String prefix) {
+		return lastIndexOf(prefix, 0, mySize - 1);
+	}
+
+	/**
+	 * Returns the index of the last word in from..to, both inclusive, starting
+	 * with prefix, or -1 if there is none.
+	 */
+	public int lastIndexOf(String prefix, int from, int to) {
+		int r = prefix.length();
+		int low = from - 1;
+		int high = to + 1;
+
+		// word low does not sort after prefix, word high does
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (comparePrefix(mid, prefix, r) <= 0)
+				low = mid;
+			else
+				high = mid;
+		}
+
+		if (low >= from && comparePrefix(low, prefix, r) == 0)
+			return low;
+		return -1;
+	}
+
+	/**
+	 * Returns an estimate of the bytes this store occupies on a 64-bit JVM
+	 * with compressed references, for comparison with
+	 * CompactTrieAutocomplete.sizeInBytes. Words cached by word are not
+	 * counted.
+	 */
+	public long sizeInBytes() {
+		return CompactTrieAutocomplete.align(CompactTrieAutocomplete.OBJECT_HEADER + 4 * CompactTrieAutocomplete.REFERENCE + 4)
+				+ CompactTrieAutocomplete.arrayBytes(myChars.length, 2)
+				+ CompactTrieAutocomplete.arrayBytes(myOffsets.length, 4)
+				+ CompactTrieAutocomplete.arrayBytes(myWeights.length, 8)
+				+ CompactTrieAutocomplete.arrayBytes(myWords.length, CompactTrieAutocomplete.REFERENCE);
+	}
+}
@@ -1,6 +1,7 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
 /**
  * General trie/priority queue algorithm for implementing Autocompletor
  * 
@@ -37,6 +38,14 @@ public class TrieAutocomplete implements Autocompletor {
 		}
 	}
 
+	/**
+	 * Wraps a trie that has already been built, as produced by
+	 * ParallelAutocompleteBuilder.
+	 */
+	TrieAutocomplete(Node root) {
+		myRoot = root;
+	}
+
 	/**
 	 * Add the word with given weight to the trie. If word already exists in the
 	 * trie, no new nodes should be created, but the weight of word should be
@@ -66,30 +75,100 @@ public class TrieAutocomplete implements Autocompletor {
 
 		// add new node
 		for (int i = 0; i < word.length(); i++) {
-			if (current.mySubtreeMaxWeight < weight) 
-				current.mySubtreeMaxWeight = weight;
-			if (!current.children.containsKey(word.charAt(i)))
-				current.children.put(word.charAt(i), new Node(word.charAt(i), current, weight));
-			current = current.children.get(word.charAt(i));
+			Node child = current.getChild(word.charAt(i));
+			if (child == null) {
+				child = new Node(word.charAt(i), current, -1);
+				current.children.put(word.charAt(i), child);
+			}
+			current = child;
 		}
 
 		// set the weight, word, isWord
 		current.myWeight = weight;
 		current.isWord = true;
 		current.myWord = word;
-		if (current.mySubtreeMaxWeight < weight) 
-			current.mySubtreeMaxWeight = weight;
-		// implement duplicate add
-		else if (current.mySubtreeMaxWeight > weight) {
-			while (current != null) {
-				current.mySubtreeMaxWeight = current.myWeight;
-				for (char c: current.children.keySet()) {
-					current.mySubtreeMaxWeight = Math.max(current.mySubtreeMaxWeight, current.getChild(c).mySubtreeMaxWeight);
-				}
-				current = current.parent;
-			}
+		updateSubtreeMax(current);
+	}
+
+	/**
+	 * Sets the weight of word, adding it to the trie if it is not already
+	 * there. Only the subtree max weights on the path from word to the root
+	 * are adjusted, and only as far up as they change.
+	 * 
+	 * @throws a
+	 *             NullPointerException if word is null
+	 * @throws an
+	 *             IllegalArgumentException if weight is negative.
+	 */
+	public void update(String word, double weight) {
+		add(word, weight);
+	}
+
+	/**
+	 * Removes word from the trie, along with any nodes that no longer lead to
+	 * a word, and adjusts the subtree max weights above it.
+	 * 
+	 * @return true if word was in the trie
+	 * @throws a
+	 *             NullPointerException if word is null
+	 */
+	public boolean remove(String word) {
+		if (word == null)
+			throw new NullPointerException("word is null.");
+
+		Node current = myRoot;
+		for (int i = 0; i < word.length() && current != null; i++) {
+			current = current.getChild(word.charAt(i));
+		}
+		if (current == null || !current.isWord)
+			return false;
+
+		current.isWord = false;
+		current.myWord = null;
+		current.myWeight = -1;
+
+		// prune the nodes that only led to word
+		while (current != myRoot && !current.isWord && current.children.isEmpty()) {
+			current.parent.children.remove(current.myInfo.charAt(0));
+			current = current.parent;
+		}
+		updateSubtreeMax(current);
+		return true;
+	}
+
+	/**
+	 * Recomputes mySubtreeMaxWeight of node, whose own weight or children
+	 * changed, then walks toward the root. A parent only needs a full rescan
+	 * of its children when node held the parent's max and went down; when
+	 * node went up the parent can just take the new value, and once a node's
+	 * value stops changing nothing above it can change either.
+	 */
+	private void updateSubtreeMax(Node node) {
+		double old = node.mySubtreeMaxWeight;
+		node.mySubtreeMaxWeight = maxOf(node);
+
+		while (node.parent != null && node.mySubtreeMaxWeight != old) {
+			Node parent = node.parent;
+			double parentOld = parent.mySubtreeMaxWeight;
+			if (node.mySubtreeMaxWeight > parentOld)
+				parent.mySubtreeMaxWeight = node.mySubtreeMaxWeight;
+			else if (old == parentOld)
+				parent.mySubtreeMaxWeight = maxOf(parent);
+			old = parentOld;
+			node = parent;
 		}
-		
+	}
+
+	/**
+	 * Returns the larger of node's own weight and its children's subtree max
+	 * weights.
+	 */
+	private double maxOf(Node node) {
+		double max = node.myWeight;
+		for (Node child : node.children.values()) {
+			max = Math.max(max, child.mySubtreeMaxWeight);
+		}
+		return max;
 	}
 
 	@Override
@@ -118,9 +197,6 @@ public class TrieAutocomplete implements Autocompletor {
 		if (prefix == null)
 			throw new NullPointerException("Prefix is null.");
 
-		ArrayList<Node> list = new ArrayList<Node>();
-		PriorityQueue<Node> pq = new PriorityQueue<Node>(new Node.ReverseSubtreeMaxWeightComparator());
-
 		Node current = myRoot;
 		String[] empty = new String[0];
 
@@ -140,8 +216,23 @@ public class TrieAutocomplete implements Autocompletor {
 				return empty;
 		}
 
+		return topKFrom(current, k);
+	}
+
+	/**
+	 * Returns the k largest-weight words in the subtrie of start, in
+	 * descending weight order.
+	 */
+	private static String[] topKFrom(Node start, int k) {
+		if (k <= 0)
+			return new String[0];
+
+		ArrayList<Node> list = new ArrayList<Node>();
+		PriorityQueue<Node> pq = new PriorityQueue<Node>(new Node.ReverseSubtreeMaxWeightComparator());
+		Node current;
+
 		// add node that contains prefix
-		pq.add(current);
+		pq.add(start);
 
 		// find top k matches
 		// list.get(k).getWeight() > current.mySubtreeMaxWeight)
@@ -177,6 +268,182 @@ public class TrieAutocomplete implements Autocompletor {
 
 	}
 
+	/**
+	 * Answers topKMatches(prefixes[i], k) for every i at once, returning the
+	 * answers in the same order as prefixes. The prefixes are answered in
+	 * sorted order, and a prefix extending an earlier one ("app" after "ap")
+	 * continues the walk down the trie from the earlier one's node instead of
+	 * starting again at the root.
+	 * 
+	 * @param prefixes
+	 *            - The prefixes to complete
+	 * @param k
+	 *            - The (maximum) number of words returned per prefix
+	 * @return An array whose element i is topKMatches(prefixes[i], k)
+	 * @throws a
+	 *             NullPointerException if prefixes or any prefix is null
+	 */
+	public String[][] topKMatchesBatch(String[] prefixes, int k) {
+		return topKMatchesBatch(prefixes, k, null);
+	}
+
+	/**
+	 * Same as topKMatchesBatch(prefixes, k), but splits large batches into
+	 * runs of sorted prefixes answered in parallel on pool. A null pool
+	 * answers the whole batch in the calling thread. The trie must not be
+	 * modified while the batch runs.
+	 */
+	public String[][] topKMatchesBatch(final String[] prefixes, final int k, ForkJoinPool pool) {
+		int[] order = PrefixBatch.sortedOrder(prefixes);
+		final String[][] results = new String[prefixes.length][];
+		PrefixBatch.answer(order, pool, (o, from, to) -> answerRun(prefixes, k, o, from, to, results));
+		return results;
+	}
+
+	/**
+	 * Answers the prefixes at order[from..to), which are sorted. stack holds
+	 * the chain of earlier prefixes that the current one extends, each with
+	 * its node.
+	 */
+	private void answerRun(String[] prefixes, int k, int[] order, int from, int to, String[][] results) {
+		String[] stack = new String[to - from];
+		Node[] nodes = new Node[to - from];
+		int depth = 0;
+
+		for (int i = from; i < to; i++) {
+			String prefix = prefixes[order[i]];
+			while (depth > 0 && !prefix.startsWith(stack[depth - 1]))
+				depth--;
+			Node current = depth > 0 ? nodes[depth - 1] : myRoot;
+
+			// walk down only the characters the earlier prefix did not cover
+			for (int j = depth > 0 ? stack[depth - 1].length() : 0; current != null && j < prefix.length(); j++) {
+				current = current.getChild(prefix.charAt(j));
+			}
+			if (current == null) {
+				results[order[i]] = new String[0];
+				continue;
+			}
+			stack[depth] = prefix;
+			nodes[depth] = current;
+			depth++;
+
+			results[order[i]] = topKFrom(current, k);
+		}
+	}
+
+	/**
+	 * Typo-tolerant version of topKMatches. Returns the k largest-weight words
+	 * that start with some string within maxEdits insertions, deletions or
+	 * substitutions of prefix, in descending weight order.
+	 * 
+	 * The trie is walked best-first by mySubtreeMaxWeight, carrying a row of
+	 * the Levenshtein table for each node: row[j] is the edit distance between
+	 * the first j characters of prefix and the node's path. A node whose row
+	 * ends within the budget matches, along with its whole subtrie; a node
+	 * whose row is over budget everywhere can never match and is pruned.
+	 * 
+	 * @param prefix
+	 *            - The (possibly mistyped) prefix
+	 * @param k
+	 *            - The (maximum) number of words to be returned
+	 * @param maxEdits
+	 *            - The largest edit distance allowed
+	 * @return An array of at most k matching words, in descending weight order
+	 * @throws a
+	 *             NullPointerException if prefix is null
+	 * @throws an
+	 *             IllegalArgumentException if maxEdits is negative
+	 */
+	public String[] topKMatches(String prefix, int k, int maxEdits) {
+		if (prefix == null)
+			throw new NullPointerException("Prefix is null.");
+		if (maxEdits < 0)
+			throw new IllegalArgumentException("maxEdits is negative");
+
+		ArrayList<String> list = new ArrayList<String>();
+		if (k <= 0)
+			return new String[0];
+
+		int m = prefix.length();
+		int[] row = new int[m + 1];
+		for (int j = 0; j <= m; j++) {
+			row[j] = j;
+		}
+
+		PriorityQueue<FuzzyEntry> pq = new PriorityQueue<FuzzyEntry>();
+		pq.add(new FuzzyEntry(myRoot, row, myRoot.mySubtreeMaxWeight, false));
+
+		while (!pq.isEmpty() && list.size() < k) {
+			FuzzyEntry entry = pq.poll();
+			Node current = entry.node;
+			if (entry.isWord) {
+				list.add(current.myWord);
+				continue;
+			}
+
+			// a null row means an ancestor already matched
+			boolean matched = entry.row == null || entry.row[m] <= maxEdits;
+			if (matched) {
+				if (current.isWord)
+					pq.add(new FuzzyEntry(current, null, current.myWeight, true));
+				for (Node child : current.children.values()) {
+					pq.add(new FuzzyEntry(child, null, child.mySubtreeMaxWeight, false));
+				}
+				continue;
+			}
+
+			for (Node child : current.children.values()) {
+				int[] next = nextRow(entry.row, prefix, child.myInfo.charAt(0));
+				int min = next[0];
+				for (int j = 1; j <= m; j++) {
+					min = Math.min(min, next[j]);
+				}
+				if (min <= maxEdits)
+					pq.add(new FuzzyEntry(child, next, child.mySubtreeMaxWeight, false));
+			}
+		}
+
+		return list.toArray(new String[list.size()]);
+	}
+
+	/**
+	 * Returns the Levenshtein row for the path of row extended by c.
+	 */
+	private static int[] nextRow(int[] row, String prefix, char c) {
+		int[] next = new int[row.length];
+		next[0] = row[0] + 1;
+		for (int j = 1; j < row.length; j++) {
+			int substitute = row[j - 1] + (prefix.charAt(j - 1) == c ? 0 : 1);
+			next[j] = Math.min(substitute, Math.min(row[j] + 1, next[j - 1] + 1));
+		}
+		return next;
+	}
+
+	/**
+	 * A node waiting in the fuzzy search, keyed by the best weight it can
+	 * still lead to: its own weight if isWord, otherwise its subtree max.
+	 */
+	private static class FuzzyEntry implements Comparable<FuzzyEntry> {
+		final Node node;
+		final int[] row;
+		final double key;
+		final boolean isWord;
+
+		FuzzyEntry(Node node, int[] row, double key, boolean isWord) {
+			this.node = node;
+			this.row = row;
+			this.key = key;
+			this.isWord = isWord;
+		}
+
+		// in reverse key order to make the PriorityQueue act as a max heap
+		@Override
+		public int compareTo(FuzzyEntry o) {
+			return Double.compare(o.key, key);
+		}
+	}
+
 	@Override
 	/**
 	 * Given a prefix, returns the largest-weight word in the trie starting with
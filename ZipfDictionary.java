@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Generates a reproducible synthetic dictionary for the autocomplete
+ * benchmarks. Letters are drawn from a skewed distribution, so some prefixes
+ * are far more crowded than others, and weights follow Zipf's law: the word
+ * of popularity rank r has weight MAX_WEIGHT / r^s. The same size, exponent
+ * and seed always produce the same words and weights.
+ *
+ */
+public class ZipfDictionary {
+	public static double MAX_WEIGHT = 1e9;
+	public static int MIN_LENGTH = 1;
+	public static int MAX_LENGTH = 12;
+
+	private final String[] myWords;
+	private final double[] myWeights;
+
+	/**
+	 * Cumulative weights, used to draw words in proportion to their weight.
+	 */
+	private final double[] myCumulative;
+
+	public ZipfDictionary(int n, long seed) {
+		this(n, 1.0, seed);
+	}
+
+	/**
+	 * Creates n distinct words whose weights follow Zipf's law with the given
+	 * exponent.
+	 *
+	 * @param n - The number of words
+	 * @param exponent - The Zipf exponent s, 1.0 being the classic law
+	 * @param seed - Seed for the random choices
+	 */
+	public ZipfDictionary(int n, double exponent, long seed) {
+		Random random = new Random(seed);
+
+		// letter i is drawn with probability proportional to 1 / (i + 1)
+		double[] letters = new double[26];
+		double total = 0;
+		for (int i = 0; i < letters.length; i++) {
+			total += 1.0 / (i + 1);
+			letters[i] = total;
+		}
+
+		myWords = new String[n];
+		HashSet<String> seen = new HashSet<String>();
+		char[] buffer = new char[MAX_LENGTH];
+		for (int i = 0; i < n; i++) {
+			String word;
+			do {
+				int length = MIN_LENGTH + random.nextInt(MAX_LENGTH - MIN_LENGTH + 1);
+				for (int j = 0; j < length; j++) {
+					buffer[j] = (char) ('a' + pick(letters, random.nextDouble() * total));
+				}
+				word = new String(buffer, 0, length);
+			} while (!seen.add(word));
+			myWords[i] = word;
+		}
+
+		// hand out the Zipf ranks in random order
+		int[] ranks = new int[n];
+		for (int i = 0; i < n; i++) {
+			ranks[i] = i + 1;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = ranks[i];
+			ranks[i] = ranks[j];
+			ranks[j] = temp;
+		}
+		myWeights = new double[n];
+		myCumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			myWeights[i] = Math.floor(MAX_WEIGHT / Math.pow(ranks[i], exponent));
+			sum += myWeights[i];
+			myCumulative[i] = sum;
+		}
+	}
+
+	/**
+	 * Returns the first index whose cumulative value exceeds x.
+	 */
+	private static int pick(double[] cumulative, double x) {
+		int i = Arrays.binarySearch(cumulative, x);
+		int index = i >= 0 ? i + 1 : -i - 1;
+		return Math.min(index, cumulative.length - 1);
+	}
+
+	public String[] words() {
+		return myWords;
+	}
+
+	public double[] weights() {
+		return myWeights;
+	}
+
+	public int size() {
+		return myWords.length;
+	}
+
+	/**
+	 * Returns count query prefixes of the given length, cut from words drawn
+	 * in proportion to their weight, the way real query traffic favors
+	 * popular words. Words shorter than length are used whole.
+	 */
+	public String[] prefixes(int length, int count, Random random) {
+		String[] prefixes = new String[count];
+		double total = myCumulative.length == 0 ? 0 : myCumulative[myCumulative.length - 1];
+		for (int i = 0; i < count; i++) {
+			String word = myWords[pick(myCumulative, random.nextDouble() * total)];
+			prefixes[i] = word.substring(0, Math.min(length, word.length()));
+		}
+		return prefixes;
+	}
+}